@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * How far each of several branches and its upstream have diverged: the
+ * commits the branch has that the upstream lacks, and the reverse. All
+ * pairs are counted in one walk of the commit index, however many there
+ * are. Each commit visited carries the set of tips it is reachable from.
+ * Commits are visited newest first, and the walk stops once every
+ * commit waiting is reachable from all the tips; those commits and
+ * their ancestors count for no pair. History ends at shallow commits.
+ *  @author Tiffany Kim */
+
+class AheadBehind {
+
+    /** A counter over the commits of INDEX, treating those in SHALLOW as
+     *  having no parents. */
+    AheadBehind(CommitIndex index, Set<String> shallow) {
+        _index = index;
+        _shallow = shallow;
+    }
+
+    /** Return, for each pair of commits in PAIRS, the number of commits
+     *  reachable from the first and not the second, and the number
+     *  reachable from the second and not the first. */
+    List<int[]> count(List<String[]> pairs) {
+        LinkedHashMap<String, Integer> tips =
+            new LinkedHashMap<String, Integer>();
+        for (String[] pair : pairs) {
+            for (String tip : pair) {
+                tips.putIfAbsent(tip, tips.size());
+            }
+        }
+        Walk walk = new Walk(tips.size());
+        for (Map.Entry<String, Integer> t : tips.entrySet()) {
+            BitSet bit = new BitSet();
+            bit.set(t.getValue());
+            walk.mark(t.getKey(), bit);
+        }
+        while (walk._live > 0) {
+            CommitInfo c = walk.poll();
+            BitSet from = walk._reach.get(c.getHash());
+            if (!_shallow.contains(c.getHash())) {
+                for (String p : c.getParents()) {
+                    walk.mark(p, from);
+                }
+            }
+        }
+        HashMap<String, BitSet> reach = walk._reach;
+        ArrayList<int[]> result = new ArrayList<int[]>();
+        for (String[] pair : pairs) {
+            int mine = tips.get(pair[0]), theirs = tips.get(pair[1]);
+            int[] counts = new int[2];
+            for (BitSet from : reach.values()) {
+                if (from.get(mine) && !from.get(theirs)) {
+                    counts[0] += 1;
+                } else if (from.get(theirs) && !from.get(mine)) {
+                    counts[1] += 1;
+                }
+            }
+            result.add(counts);
+        }
+        return result;
+    }
+
+    /** The state of one count: the tips each commit reached is
+     *  reachable from, and the commits waiting to be visited, newest
+     *  first. A commit may wait more than once, when it is reached again
+     *  from new tips. The number of waiting entries whose commits are
+     *  not yet reachable from every tip is kept as the sets grow, so the
+     *  walk knows when to stop without looking through the queue. */
+    private class Walk {
+
+        /** A walk from ALL tips. */
+        Walk(int all) {
+            _all = all;
+        }
+
+        /** Record that commit HASH is reachable from the tips in FROM,
+         *  queueing it unless it already was. */
+        void mark(String hash, BitSet from) {
+            CommitInfo c = _index.get(hash);
+            if (c == null) {
+                return;
+            }
+            BitSet old = _reach.get(hash);
+            int waiting = _waiting.getOrDefault(hash, 0);
+            if (old == null) {
+                old = new BitSet();
+                _reach.put(hash, old);
+            } else {
+                BitSet added = (BitSet) from.clone();
+                added.andNot(old);
+                if (added.isEmpty()) {
+                    return;
+                }
+            }
+            boolean wasLive = old.cardinality() < _all;
+            old.or(from);
+            boolean live = old.cardinality() < _all;
+            if (wasLive && !live) {
+                _live -= waiting;
+            }
+            _waiting.put(hash, waiting + 1);
+            if (live) {
+                _live += 1;
+            }
+            _queue.add(c);
+        }
+
+        /** Remove and return the newest waiting commit. */
+        CommitInfo poll() {
+            CommitInfo c = _queue.poll();
+            _waiting.merge(c.getHash(), -1, Integer::sum);
+            if (_reach.get(c.getHash()).cardinality() < _all) {
+                _live -= 1;
+            }
+            return c;
+        }
+
+        /** Number of tips. */
+        private final int _all;
+        /** Tips each commit reached is reachable from, by hash. */
+        private final HashMap<String, BitSet> _reach =
+            new HashMap<String, BitSet>();
+        /** Commits waiting to be visited. */
+        private final PriorityQueue<CommitInfo> _queue =
+            new PriorityQueue<CommitInfo>(NEWEST_FIRST);
+        /** Number of times each commit is waiting, by hash. */
+        private final HashMap<String, Integer> _waiting =
+            new HashMap<String, Integer>();
+        /** Number of waiting entries whose commits are not reachable from
+         *  every tip. */
+        private int _live;
+    }
+
+    /** Orders commits from newest to oldest. */
+    private static final Comparator<CommitInfo> NEWEST_FIRST =
+        (a, b) -> b.getTime().compareTo(a.getTime());
+
+    /** Index of the commits. */
+    private final CommitIndex _index;
+    /** Commits whose parents are not held. */
+    private final Set<String> _shallow;
+}
@@ -0,0 +1,433 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints in the style of a Roaring
+ * bitmap. The ints are grouped by their high 16 bits; each group is a
+ * container holding the low 16 bits, either as a sorted array while it
+ * has at most ARRAY_MAX members or as a 65536-bit set once it has more.
+ * Union and difference work a container at a time.
+ *  @author Tiffany Kim */
+
+class Bitmap {
+
+    /** An empty set. */
+    Bitmap() {
+        _keys = new char[INITIAL];
+        _containers = new Container[INITIAL];
+    }
+
+    /** Add X to the set. */
+    void add(int x) {
+        char key = (char) (x >>> BITS);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new ArrayContainer());
+        }
+        _containers[i] = _containers[i].add((char) x);
+    }
+
+    /** Return true iff X is in the set. */
+    boolean contains(int x) {
+        int i = find((char) (x >>> BITS));
+        return i >= 0 && _containers[i].contains((char) x);
+    }
+
+    /** Add every member of OTHER to the set. */
+    void or(Bitmap other) {
+        for (int j = 0; j < other._size; j += 1) {
+            int i = find(other._keys[j]);
+            if (i < 0) {
+                insert(-i - 1, other._keys[j], other._containers[j].copy());
+            } else {
+                _containers[i] = _containers[i].or(other._containers[j]);
+            }
+        }
+    }
+
+    /** Return the members of the set that are not in OTHER. */
+    Bitmap andNot(Bitmap other) {
+        Bitmap result = new Bitmap();
+        for (int i = 0; i < _size; i += 1) {
+            int j = other.find(_keys[i]);
+            Container c = j < 0 ? _containers[i].copy()
+                : _containers[i].andNot(other._containers[j]);
+            if (c.cardinality() > 0) {
+                result.insert(result._size, _keys[i], c);
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of members. */
+    int cardinality() {
+        int n = 0;
+        for (int i = 0; i < _size; i += 1) {
+            n += _containers[i].cardinality();
+        }
+        return n;
+    }
+
+    /** Apply ACTION to each member, in increasing order. */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < _size; i += 1) {
+            _containers[i].forEach(_keys[i] << BITS, action);
+        }
+    }
+
+    /** Return the serialized form of the set. */
+    byte[] toBytes() {
+        int length = Integer.BYTES;
+        for (int i = 0; i < _size; i += 1) {
+            length += 2 + 1 + _containers[i].byteSize();
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(_size);
+        for (int i = 0; i < _size; i += 1) {
+            out.putChar(_keys[i]);
+            _containers[i].write(out);
+        }
+        return out.array();
+    }
+
+    /** Return the set serialized at the position of IN, advancing past
+     *  it. */
+    static Bitmap read(ByteBuffer in) {
+        Bitmap result = new Bitmap();
+        int n = in.getInt();
+        for (int i = 0; i < n; i += 1) {
+            char key = in.getChar();
+            Container c = in.get() == ARRAY
+                ? ArrayContainer.read(in) : BitsetContainer.read(in);
+            result.insert(result._size, key, c);
+        }
+        return result;
+    }
+
+    /** Return the position of the container for KEY, or -(p + 1) if it
+     *  belongs at position p but is absent. */
+    private int find(char key) {
+        return Arrays.binarySearch(_keys, 0, _size, key);
+    }
+
+    /** Insert container C for KEY at position I. */
+    private void insert(int i, char key, Container c) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, 2 * _size);
+            _containers = Arrays.copyOf(_containers, 2 * _size);
+        }
+        System.arraycopy(_keys, i, _keys, i + 1, _size - i);
+        System.arraycopy(_containers, i, _containers, i + 1, _size - i);
+        _keys[i] = key;
+        _containers[i] = c;
+        _size += 1;
+    }
+
+    /** The low 16 bits of the members of one group. Operations that
+     *  change a container return the container to use in its place. */
+    private abstract static class Container {
+
+        /** Return the container with LOW added. */
+        abstract Container add(char low);
+
+        /** Return true iff LOW is a member. */
+        abstract boolean contains(char low);
+
+        /** Return the number of members. */
+        abstract int cardinality();
+
+        /** Return a copy of this container. */
+        abstract Container copy();
+
+        /** Return this container with the members of OTHER added. */
+        Container or(Container other) {
+            long[] words = words();
+            long[] theirs = other.words();
+            for (int i = 0; i < WORDS; i += 1) {
+                words[i] |= theirs[i];
+            }
+            return BitsetContainer.of(words);
+        }
+
+        /** Return the members of this container not in OTHER. */
+        Container andNot(Container other) {
+            long[] words = words();
+            long[] theirs = other.words();
+            for (int i = 0; i < WORDS; i += 1) {
+                words[i] &= ~theirs[i];
+            }
+            return BitsetContainer.of(words);
+        }
+
+        /** Return a new bit set of the members. */
+        abstract long[] words();
+
+        /** Apply ACTION to each member plus HIGH, in order. */
+        abstract void forEach(int high, IntConsumer action);
+
+        /** Return the size of the serialized container after its
+         *  type. */
+        abstract int byteSize();
+
+        /** Write the type and contents of the container to OUT. */
+        abstract void write(ByteBuffer out);
+    }
+
+    /** A container holding a sorted array of its members. */
+    private static class ArrayContainer extends Container {
+
+        /** An empty container. */
+        ArrayContainer() {
+            this(new char[INITIAL], 0);
+        }
+
+        /** A container of the first SIZE of VALUES. */
+        ArrayContainer(char[] values, int size) {
+            _values = values;
+            _count = size;
+        }
+
+        @Override
+        Container add(char low) {
+            int i = Arrays.binarySearch(_values, 0, _count, low);
+            if (i >= 0) {
+                return this;
+            } else if (_count == ARRAY_MAX) {
+                return new BitsetContainer(words(), _count).add(low);
+            }
+            i = -i - 1;
+            if (_count == _values.length) {
+                _values = Arrays.copyOf(_values, Math.max(2 * _count, 1));
+            }
+            System.arraycopy(_values, i, _values, i + 1, _count - i);
+            _values[i] = low;
+            _count += 1;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(_values, 0, _count, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return _count;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(_values,
+                    Math.max(_count, 1)), _count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof ArrayContainer)
+                    || _count + other.cardinality() > ARRAY_MAX) {
+                return super.or(other);
+            }
+            ArrayContainer that = (ArrayContainer) other;
+            char[] merged = new char[_count + that._count];
+            int i = 0, j = 0, n = 0;
+            while (i < _count || j < that._count) {
+                char v;
+                if (j == that._count
+                        || (i < _count && _values[i] < that._values[j])) {
+                    v = _values[i++];
+                } else if (i == _count || that._values[j] < _values[i]) {
+                    v = that._values[j++];
+                } else {
+                    v = _values[i++];
+                    j += 1;
+                }
+                merged[n++] = v;
+            }
+            return new ArrayContainer(merged, n);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] kept = new char[Math.max(_count, 1)];
+            int n = 0;
+            for (int i = 0; i < _count; i += 1) {
+                if (!other.contains(_values[i])) {
+                    kept[n++] = _values[i];
+                }
+            }
+            return new ArrayContainer(kept, n);
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < _count; i += 1) {
+                words[_values[i] >>> WORD_SHIFT] |= 1L << _values[i];
+            }
+            return words;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < _count; i += 1) {
+                action.accept(high | _values[i]);
+            }
+        }
+
+        @Override
+        int byteSize() {
+            return Character.BYTES + Character.BYTES * _count;
+        }
+
+        @Override
+        void write(ByteBuffer out) {
+            out.put(ARRAY);
+            out.putChar((char) _count);
+            for (int i = 0; i < _count; i += 1) {
+                out.putChar(_values[i]);
+            }
+        }
+
+        /** Return the array container whose contents follow its type in
+         *  IN. */
+        static ArrayContainer read(ByteBuffer in) {
+            int n = in.getChar();
+            char[] values = new char[Math.max(n, 1)];
+            for (int i = 0; i < n; i += 1) {
+                values[i] = in.getChar();
+            }
+            return new ArrayContainer(values, n);
+        }
+
+        /** Members, sorted, in the first _count places. */
+        private char[] _values;
+        /** Number of members. */
+        private int _count;
+    }
+
+    /** A container holding a bit for every possible member. */
+    private static class BitsetContainer extends Container {
+
+        /** A container of the set bits of WORDS, of which there are
+         *  COUNT. */
+        BitsetContainer(long[] words, int count) {
+            _words = words;
+            _count = count;
+        }
+
+        /** Return the smaller kind of container holding the set bits of
+         *  WORDS. */
+        static Container of(long[] words) {
+            int count = 0;
+            for (long w : words) {
+                count += Long.bitCount(w);
+            }
+            if (count > ARRAY_MAX) {
+                return new BitsetContainer(words, count);
+            }
+            char[] values = new char[Math.max(count, 1)];
+            int n = 0;
+            for (int i = 0; i < WORDS; i += 1) {
+                for (long w = words[i]; w != 0; w &= w - 1) {
+                    values[n++] = (char) ((i << WORD_SHIFT)
+                            + Long.numberOfTrailingZeros(w));
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((_words[low >>> WORD_SHIFT] & bit) == 0) {
+                _words[low >>> WORD_SHIFT] |= bit;
+                _count += 1;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (_words[low >>> WORD_SHIFT] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return _count;
+        }
+
+        @Override
+        Container copy() {
+            return new BitsetContainer(_words.clone(), _count);
+        }
+
+        @Override
+        long[] words() {
+            return _words.clone();
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < WORDS; i += 1) {
+                for (long w = _words[i]; w != 0; w &= w - 1) {
+                    action.accept(high | (i << WORD_SHIFT)
+                            + Long.numberOfTrailingZeros(w));
+                }
+            }
+        }
+
+        @Override
+        int byteSize() {
+            return Long.BYTES * WORDS;
+        }
+
+        @Override
+        void write(ByteBuffer out) {
+            out.put(BITSET);
+            for (long w : _words) {
+                out.putLong(w);
+            }
+        }
+
+        /** Return the bit set container whose contents follow its type
+         *  in IN. */
+        static Container read(ByteBuffer in) {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < WORDS; i += 1) {
+                words[i] = in.getLong();
+            }
+            return of(words);
+        }
+
+        /** One bit per possible member. */
+        private final long[] _words;
+        /** Number of members. */
+        private int _count;
+    }
+
+    /** Bits of a member held in a container. */
+    private static final int BITS = 16;
+    /** Largest number of members of an array container. */
+    private static final int ARRAY_MAX = 4096;
+    /** Words of a bit set container. */
+    private static final int WORDS = (1 << BITS) / Long.SIZE;
+    /** Log base 2 of the bits in a word. */
+    private static final int WORD_SHIFT = 6;
+    /** Initial capacity of arrays. */
+    private static final int INITIAL = 4;
+    /** Serialized type of an array container. */
+    private static final byte ARRAY = 0;
+    /** Serialized type of a bit set container. */
+    private static final byte BITSET = 1;
+
+    /** Keys of the containers, in increasing order. */
+    private char[] _keys;
+    /** Containers, by position of their keys. */
+    private Container[] _containers;
+    /** Number of containers. */
+    private int _size;
+}
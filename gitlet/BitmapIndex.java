@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reachability bitmaps stored for selected commits: for each, the set
+ * of ObjectIds numbers of every commit reachable from it, itself
+ * included, and of every blob their trees refer to. A commit's history
+ * never changes, so neither does its bitmap. Commits and fetches add
+ * bitmaps for new branch heads far from any stored one, and gc replaces
+ * the whole file. It records how many objects were numbered when it was
+ * written, and is disregarded if the numbering has since lost any of
+ * them.
+ *  @author Tiffany Kim */
+
+class BitmapIndex {
+
+    /** An index with no bitmaps. */
+    BitmapIndex() {
+        _bitmaps = new HashMap<ObjectId, Bitmap>();
+    }
+
+    /** Return the bitmaps in object directory DIR, which were numbered
+     *  by IDS. */
+    static BitmapIndex open(File dir, ObjectIds ids) {
+        BitmapIndex result = new BitmapIndex();
+        File file = new File(dir, NAME);
+        if (!file.isFile()) {
+            return result;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (in.getInt() > ids.size()) {
+                return result;
+            }
+            int n = in.getInt();
+            byte[] hash = new byte[ObjectId.BYTES];
+            for (int i = 0; i < n; i += 1) {
+                in.get(hash);
+                result._bitmaps.put(ObjectId.fromBytes(hash, 0),
+                        Bitmap.read(in));
+            }
+        } catch (IOException | BufferUnderflowException excp) {
+            result._bitmaps.clear();
+        }
+        return result;
+    }
+
+    /** Return the bitmap of COMMIT, or null if it has none. */
+    Bitmap get(String commit) {
+        return _bitmaps.get(ObjectId.fromHex(commit));
+    }
+
+    /** Set the bitmap of COMMIT to BITMAP. */
+    void put(String commit, Bitmap bitmap) {
+        _bitmaps.put(ObjectId.fromHex(commit), bitmap);
+    }
+
+    /** Replace the bitmaps in object directory DIR with these, whose
+     *  numbers come from IDS. */
+    void write(File dir, ObjectIds ids) {
+        byte[][] encoded = new byte[_bitmaps.size()][];
+        int length = 2 * Integer.BYTES;
+        int i = 0;
+        for (Map.Entry<ObjectId, Bitmap> e : _bitmaps.entrySet()) {
+            encoded[i] = e.getValue().toBytes();
+            length += ObjectId.BYTES + encoded[i].length;
+            i += 1;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(ids.size());
+        out.putInt(_bitmaps.size());
+        i = 0;
+        for (Map.Entry<ObjectId, Bitmap> e : _bitmaps.entrySet()) {
+            out.put(e.getKey().toBytes());
+            out.put(encoded[i]);
+            i += 1;
+        }
+        WriteBatch.replace(new File(dir, NAME), out.array());
+    }
+
+    /** Name of the file of bitmaps. */
+    static final String NAME = "bitmaps";
+
+    /** Bitmaps, by commit. */
+    private final HashMap<ObjectId, Bitmap> _bitmaps;
+}
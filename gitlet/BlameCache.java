@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * Line attributions computed by blame, kept so that blaming a file
+ * again, or at a commit whose history has been blamed before, reuses
+ * them. Each entry gives, for the version of a file in a commit, the
+ * commit that last changed each of its lines. History never changes,
+ * so neither do entries. The file is append-only; each record holds a
+ * commit hash, a path, the distinct commits named, and for each line
+ * the position of its commit among them. Blame runs under the shared
+ * lock, so the file has a lock of its own for appending. gc removes the
+ * file.
+ *  @author Tiffany Kim */
+
+class BlameCache {
+
+    /** A cache stored in object directory DIR. */
+    private BlameCache(File dir) {
+        _file = new File(dir, NAME);
+        _entries = new HashMap<String, String[]>();
+        _pending = new ByteArrayOutputStream();
+    }
+
+    /** Return the cache in object directory DIR. A partly written
+     *  record at the end is ignored, and cut off when entries are next
+     *  saved. */
+    static BlameCache open(File dir) {
+        BlameCache result = new BlameCache(dir);
+        if (!result._file.exists()) {
+            return result;
+        }
+        result._size = result._file.length();
+        byte[] hash = new byte[ObjectId.BYTES];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(result._file)))) {
+            while (true) {
+                int n = in.read(hash);
+                if (n < 0) {
+                    break;
+                } else if (n < ObjectId.BYTES) {
+                    in.readFully(hash, n, ObjectId.BYTES - n);
+                }
+                String commit = ObjectId.toHex(hash);
+                String path = in.readUTF();
+                String[] owners = new String[in.readInt()];
+                for (int i = 0; i < owners.length; i += 1) {
+                    in.readFully(hash);
+                    owners[i] = ObjectId.toHex(hash);
+                }
+                String[] lines = new String[in.readInt()];
+                for (int i = 0; i < lines.length; i += 1) {
+                    lines[i] = owners[in.readInt()];
+                }
+                result._entries.put(key(commit, path), lines);
+                result._good += recordSize(path, owners.length, lines.length);
+            }
+        } catch (EOFException | ArrayIndexOutOfBoundsException excp) {
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Return the commits that last changed each line of file PATH in
+     *  COMMIT, or null if they are not cached. */
+    String[] get(String commit, String path) {
+        return _entries.get(key(commit, path));
+    }
+
+    /** Record that LINES are the commits that last changed each line of
+     *  file PATH in COMMIT, to be written by the next save. */
+    void put(String commit, String path, String[] lines) {
+        if (_entries.putIfAbsent(key(commit, path), lines) != null) {
+            return;
+        }
+        HashMap<String, Integer> positions = new HashMap<String, Integer>();
+        ByteArrayOutputStream owners = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(_pending)) {
+            out.write(ObjectId.hexBytes(commit));
+            out.writeUTF(path);
+            int[] refs = new int[lines.length];
+            for (int i = 0; i < lines.length; i += 1) {
+                Integer p = positions.get(lines[i]);
+                if (p == null) {
+                    p = positions.size();
+                    positions.put(lines[i], p);
+                    byte[] h = ObjectId.hexBytes(lines[i]);
+                    owners.write(h, 0, h.length);
+                }
+                refs[i] = p;
+            }
+            out.writeInt(positions.size());
+            owners.writeTo(out);
+            out.writeInt(lines.length);
+            for (int r : refs) {
+                out.writeInt(r);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append the entries put since the cache was read to its file, to
+     *  be made durable with the next batch of writes. This is best
+     *  effort: nothing is written if another process holds the file's
+     *  lock or has written the file since it was read. */
+    void save() {
+        if (_pending.size() == 0) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.tryLock();
+            if (lock == null) {
+                return;
+            }
+            try {
+                if (ch.size() != _size) {
+                    return;
+                }
+                ch.truncate(_good);
+                ByteBuffer data = ByteBuffer.wrap(_pending.toByteArray());
+                ch.position(_good);
+                while (data.hasRemaining()) {
+                    ch.write(data);
+                }
+                _good += data.limit();
+                _size = _good;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _pending.reset();
+        WriteBatch.touched(_file);
+    }
+
+    /** Return the key of the entry for file PATH in COMMIT. */
+    private static String key(String commit, String path) {
+        return commit + ":" + path;
+    }
+
+    /** Return the size in bytes of a record for PATH naming OWNERS
+     *  commits over LINES lines. */
+    private static long recordSize(String path, int owners, int lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(path);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ObjectId.BYTES + bytes.size() + Integer.BYTES
+            + (long) ObjectId.BYTES * owners + Integer.BYTES
+            + (long) Integer.BYTES * lines;
+    }
+
+    /** Name of the cache file. */
+    static final String NAME = "blame-cache";
+
+    /** The cache file. */
+    private final File _file;
+    /** Commits of each line, by commit and path. */
+    private final HashMap<String, String[]> _entries;
+    /** Records of entries not yet saved. */
+    private final ByteArrayOutputStream _pending;
+    /** Length of the file when last read or written. */
+    private long _size;
+    /** Length of the whole records at the start of the file. */
+    private long _good;
+}
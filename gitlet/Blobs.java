@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Storage of file contents as blobs in an object directory. A blob is
+ * named by the SHA-1 hash of the file's contents. Small files are
+ * stored whole. Files of at least gitlet.chunkThreshold bytes (a system
+ * property) are split into content-defined chunks, each stored as its
+ * own object, and the blob is a manifest listing the chunks, so that
+ * versions of a large file share their unchanged chunks.
+ *  @author Tiffany Kim */
+
+class Blobs {
+
+    /** Store the contents of FILE as a blob in DIR and return its
+     *  hash. The objects are handed to ObjectWriter, and are on disk
+     *  only once it is drained. */
+    static String store(File dir, File file) {
+        if (file.length() < threshold()) {
+            byte[] data = Utils.readContents(file);
+            if (!isManifest(data)) {
+                String hash = Utils.sha1(data);
+                ObjectWriter.write(new File(dir, hash), data);
+                return hash;
+            }
+        }
+        return storeChunked(dir, file);
+    }
+
+    /** Store FILE in DIR as chunks and a manifest, writing only chunks
+     *  not already present. Return the blob's hash. */
+    private static String storeChunked(File dir, File file) {
+        MessageDigest whole = DIGEST.get();
+        whole.reset();
+        StringBuilder manifest = new StringBuilder(MAGIC);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                whole.update(chunk);
+                String hash = Utils.sha1(chunk);
+                File obj = new File(dir, hash);
+                if (!WriteBatch.exists(obj)) {
+                    ObjectWriter.write(obj, chunk);
+                }
+                manifest.append(hash).append(' ').append(chunk.length)
+                    .append('\n');
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String hash = ObjectId.toHex(whole.digest());
+        ObjectWriter.write(new File(dir, hash),
+                manifest.toString().getBytes(StandardCharsets.UTF_8));
+        return hash;
+    }
+
+    /** Return a stream of the contents of blob HASH in DIR. */
+    static InputStream open(File dir, String hash) throws IOException {
+        List<String> chunks = chunks(dir, hash);
+        Metrics.objectRead();
+        if (chunks.isEmpty()) {
+            return Files.newInputStream(
+                WriteBatch.current(new File(dir, hash)).toPath());
+        }
+        Iterator<String> next = chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return next.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!next.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    Metrics.objectRead();
+                    return Files.newInputStream(WriteBatch.current(
+                        new File(dir, next.next())).toPath());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Write the contents of blob HASH in DIR to DEST, a chunk at a
+     *  time. */
+    static void extract(File dir, String hash, File dest) {
+        try (InputStream in = open(dir, hash);
+             OutputStream out = Files.newOutputStream(dest.toPath())) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a file holding the contents of blob HASH in DIR: the blob
+     *  itself, or for a chunked blob, a temporary file assembled from
+     *  its chunks. */
+    static File file(File dir, String hash) {
+        if (chunks(dir, hash).isEmpty()) {
+            Metrics.objectRead();
+            return WriteBatch.current(new File(dir, hash));
+        }
+        try {
+            File tmp = File.createTempFile("gitlet-", ".blob");
+            tmp.deleteOnExit();
+            extract(dir, hash, tmp);
+            return tmp;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the chunks of blob HASH in DIR, in order, or an empty list
+     *  if it is stored whole or absent. */
+    static List<String> chunks(File dir, String hash) {
+        File obj = WriteBatch.current(new File(dir, hash));
+        if (!isManifest(obj)) {
+            return Collections.emptyList();
+        }
+        String text = Utils.readContentsAsString(obj);
+        List<String> result = new ArrayList<String>();
+        for (String line : text.substring(MAGIC.length()).split("\n")) {
+            if (line.length() > 0) {
+                result.add(line.substring(0, Utils.UID_LENGTH));
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff object OBJ is a chunk manifest. */
+    static boolean isManifest(File obj) {
+        if (obj.length() < MAGIC_BYTES.length) {
+            return false;
+        }
+        byte[] head = new byte[MAGIC_BYTES.length];
+        try (InputStream in = Files.newInputStream(obj.toPath())) {
+            return in.readNBytes(head, 0, head.length) == head.length
+                && Arrays.equals(head, MAGIC_BYTES);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return true iff DATA begins like a chunk manifest. Files that do
+     *  are always stored chunked, so that no whole blob is mistaken for
+     *  a manifest. */
+    private static boolean isManifest(byte[] data) {
+        return data.length >= MAGIC_BYTES.length
+            && Arrays.equals(data, 0, MAGIC_BYTES.length,
+                    MAGIC_BYTES, 0, MAGIC_BYTES.length);
+    }
+
+    /** Return the SHA-1 hash of the contents of FILE, read a buffer at a
+     *  time, or an empty string if it cannot be read. */
+    static String hash(File file) {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        byte[] buf = BUFFER.get();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            return "";
+        }
+        return ObjectId.toHex(md.digest());
+    }
+
+    /** Return the size at which files are chunked. */
+    private static long threshold() {
+        return Long.getLong("gitlet.chunkThreshold", DEFAULT_THRESHOLD);
+    }
+
+    /** Files at least this large are chunked unless configured
+     *  otherwise. */
+    private static final long DEFAULT_THRESHOLD = 8L * 1024 * 1024;
+    /** First line of a chunk manifest. */
+    private static final String MAGIC = "\0gitlet-chunks\n";
+    /** Bytes of MAGIC. */
+    private static final byte[] MAGIC_BYTES =
+        MAGIC.getBytes(StandardCharsets.UTF_8);
+    /** Size of the buffer used to read files. */
+    private static final int READ_SIZE = 1 << 16;
+
+    /** Per-thread SHA-1 digest. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
+    /** Per-thread read buffer. */
+    private static final ThreadLocal<byte[]> BUFFER =
+        ThreadLocal.withInitial(() -> new byte[READ_SIZE]);
+}
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a stream into content-defined chunks with the FastCDC
+ * algorithm. Cut points depend only on the bytes near them, so an edit
+ * to one part of a large file changes only the chunks around it.
+ *  @author Tiffany Kim */
+
+class Chunker {
+
+    /** A chunker reading from IN. */
+    Chunker(InputStream in) {
+        _in = in;
+        _buf = new byte[2 * MAX_SIZE];
+    }
+
+    /** Return the next chunk, or null at the end of the stream. */
+    byte[] next() throws IOException {
+        fill();
+        if (_pos == _limit) {
+            return null;
+        }
+        int len = cut(_buf, _pos, _limit - _pos);
+        byte[] chunk = Arrays.copyOfRange(_buf, _pos, _pos + len);
+        _pos += len;
+        return chunk;
+    }
+
+    /** Read until at least MAX_SIZE bytes are buffered or the stream
+     *  ends. */
+    private void fill() throws IOException {
+        if (_limit - _pos >= MAX_SIZE) {
+            return;
+        }
+        if (_pos > 0) {
+            System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+        }
+        while (!_eof && _limit < _buf.length) {
+            int n = _in.read(_buf, _limit, _buf.length - _limit);
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _limit += n;
+            }
+        }
+    }
+
+    /** Return the length of the chunk starting at BUF[START], where LEN
+     *  bytes are available. */
+    static int cut(byte[] buf, int start, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int n = Math.min(len, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            fp = (fp << 1) + GEAR[buf[start + i] & BYTE_MASK];
+            if ((fp & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            fp = (fp << 1) + GEAR[buf[start + i] & BYTE_MASK];
+            if ((fp & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return the random gear table used by the rolling hash. It is
+     *  generated from a fixed seed, since chunk boundaries must be the
+     *  same in every repository. */
+    private static long[] gearTable() {
+        long[] table = new long[BYTE_MASK + 1];
+        long x = GEAR_SEED;
+        for (int i = 0; i < table.length; i += 1) {
+            x += SPLITMIX_GAMMA;
+            long z = x;
+            z = (z ^ (z >>> 30)) * SPLITMIX_MUL1;
+            z = (z ^ (z >>> 27)) * SPLITMIX_MUL2;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+
+    /** Smallest chunk, except at the end of a stream. */
+    static final int MIN_SIZE = 256 * 1024;
+    /** Target chunk size. */
+    static final int AVG_SIZE = 1024 * 1024;
+    /** Largest chunk. */
+    static final int MAX_SIZE = 4 * 1024 * 1024;
+
+    /** Mask used before the target size; it has more bits than one for
+     *  the target size, making cuts rarer there. */
+    private static final long MASK_SMALL = ((1L << 22) - 1) << 40;
+    /** Mask used after the target size, making cuts likelier there. */
+    private static final long MASK_LARGE = ((1L << 18) - 1) << 40;
+    /** Mask selecting the low byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+    /** Seed of the gear table. */
+    private static final long GEAR_SEED = 0x676974_6c6574L;
+    /** SplitMix64 increment. */
+    private static final long SPLITMIX_GAMMA = 0x9e3779b97f4a7c15L;
+    /** First SplitMix64 multiplier. */
+    private static final long SPLITMIX_MUL1 = 0xbf58476d1ce4e5b9L;
+    /** Second SplitMix64 multiplier. */
+    private static final long SPLITMIX_MUL2 = 0x94d049bb133111ebL;
+    /** Gear table. */
+    private static final long[] GEAR = gearTable();
+
+    /** Source of the data. */
+    private final InputStream _in;
+    /** Buffered data. */
+    private final byte[] _buf;
+    /** Start of the unchunked data in _buf. */
+    private int _pos;
+    /** End of the data in _buf. */
+    private int _limit;
+    /** True once _in is exhausted. */
+    private boolean _eof;
+}
@@ -6,10 +6,11 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.Formatter;
 
 /**
  * Each object is a commit.
@@ -50,9 +51,10 @@ public class Commit extends Utils implements Serializable {
         return _commitHash;
     }
 
-    /** Return tree. */
-    public HashMap<String, String> getTree() {
-        return _tree;
+    /** Return tree, which may not be changed, as commits are shared
+     *  through the commit cache. */
+    public Map<String, String> getTree() {
+        return Collections.unmodifiableMap(_tree);
     }
 
     /** Date format in log. */
@@ -78,9 +80,9 @@ public class Commit extends Utils implements Serializable {
         return _message;
     }
 
-    /** Return a key set. */
+    /** Return a key set, which may not be changed. */
     public Set<String> getKeys() {
-        return _tree.keySet();
+        return getTree().keySet();
     }
 
     /** Return parent. */
@@ -88,25 +90,55 @@ public class Commit extends Utils implements Serializable {
         return _parentHash;
     }
 
+    /** Return the merged-in parent, or null if this is not a merge. */
+    public String getSecondParent() {
+        return secondparent;
+    }
+
+    /** Return the time of this commit. */
+    public Instant getTime() {
+        return _commitTime.toInstant();
+    }
+
+    /** Return the zone offset of the commit time, in seconds. */
+    public int getZoneOffset() {
+        return _commitTime.getOffset().getTotalSeconds();
+    }
+
+    /** Return the hashes of all parents, first parent first. */
+    public String[] getParents() {
+        if (_parentHash.length() == 0) {
+            return new String[0];
+        } else if (secondparent == null) {
+            return new String[] {_parentHash};
+        }
+        int more = _moreParents == null ? 0 : _moreParents.length;
+        String[] result = new String[2 + more];
+        result[0] = _parentHash;
+        result[1] = secondparent;
+        for (int i = 0; i < more; i += 1) {
+            result[2 + i] = _moreParents[i];
+        }
+        return result;
+    }
+
     /** Add co-parent S. */
     public void setCoParent(String s) {
         secondparent = s;
     }
 
-    /** Override toString for log. */
-    @Override
-    public String toString() {
-        Formatter out = new Formatter();
-        out.format("===\n");
-        out.format("commit %s\n", _commitHash);
-        if (secondparent != null) {
-            out.format("Merge: %s %s\n",
-                    _parentHash.substring(0, 7),
-                    secondparent.substring(0, 7));
+    /** Add S as another merged-in parent, after the co-parent. */
+    public void addCoParent(String s) {
+        if (secondparent == null) {
+            secondparent = s;
+        } else if (_moreParents == null) {
+            _moreParents = new String[] {s};
+        } else {
+            String[] more = new String[_moreParents.length + 1];
+            System.arraycopy(_moreParents, 0, more, 0, _moreParents.length);
+            more[_moreParents.length] = s;
+            _moreParents = more;
         }
-        out.format("Date: %s\n", timeToString());
-        out.format("%s\n", _message);
-        return out.toString();
     }
 
     /** Commit time. */
@@ -127,6 +159,15 @@ public class Commit extends Utils implements Serializable {
     /** Merged branch. */
     private String secondparent;
 
+    /** Parents after the second of an octopus merge, or null, as in
+     *  every commit written before octopus merges. */
+    private String[] _moreParents;
+
+    /** Pinned to the value computed for the original form of this
+     *  class, so that commits written before fields and methods were
+     *  added still read. */
+    private static final long serialVersionUID = -1668025110246558760L;
+
     /**
      * Initial Date.
      */
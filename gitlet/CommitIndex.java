@@ -0,0 +1,238 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An append-only index of commit metadata, kept beside the objects so
+ * that logs can be printed without deserializing commits and their
+ * file trees. Each record holds a commit's hash, parents and time, and
+ * the position of its message in a separate message file.
+ *  @author Tiffany Kim */
+
+class CommitIndex {
+
+    /** An index stored in the object directory DIR. */
+    private CommitIndex(File dir) {
+        _indexFile = new File(dir, INDEX_NAME);
+        _messageFile = new File(dir, MESSAGE_NAME);
+        _commits = new LinkedHashMap<ObjectId, CommitInfo>();
+    }
+
+    /** Return the index in object directory DIR, creating it if needed.
+     *  A partly written record at the end, left by a crash, is ignored,
+     *  and cut off the file if this process holds the repository's lock
+     *  exclusively; a reader must not cut it, as it may be a record
+     *  still being written. */
+    static CommitIndex open(File dir) {
+        CommitIndex index = new CommitIndex(dir);
+        if (!index._indexFile.exists()) {
+            return index;
+        }
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(index._indexFile)))) {
+            while (true) {
+                CommitInfo info = index.readRecord(in);
+                if (info == null) {
+                    break;
+                }
+                index._commits.put(ObjectId.fromHex(info.getHash()), info);
+                good += recordSize(info);
+            }
+        } catch (EOFException excp) {
+            if (RepoLock.exclusive(dir)) {
+                index.truncate(good);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return index;
+    }
+
+    /** Return the metadata of commit HASH, or null if it is not
+     *  indexed. */
+    CommitInfo get(String hash) {
+        return _commits.get(ObjectId.fromHex(hash));
+    }
+
+    /** Return true iff commit HASH is indexed. */
+    boolean contains(String hash) {
+        return _commits.containsKey(ObjectId.fromHex(hash));
+    }
+
+    /** Return the metadata of all indexed commits, in the order they
+     *  were added. */
+    Collection<CommitInfo> all() {
+        return _commits.values();
+    }
+
+    /** Return the number of indexed commits. */
+    int size() {
+        return _commits.size();
+    }
+
+    /** Append commit C to the index unless it is already there. A
+     *  process that may only read the repository keeps C in memory. */
+    void add(Commit c) {
+        ObjectId id = ObjectId.fromHex(c.getHash());
+        if (_commits.containsKey(id)) {
+            return;
+        } else if (RepoLock.readOnly()) {
+            _commits.put(id, new CommitInfo(c.getHash(),
+                    c.getParents(), c.getTime().getEpochSecond(),
+                    c.getTime().getNano(), c.getZoneOffset(),
+                    c.getMessage()));
+            return;
+        }
+        byte[] msg = c.getMessage().getBytes(StandardCharsets.UTF_8);
+        long offset = _messageFile.length();
+        CommitInfo info = new CommitInfo(this, c.getHash(), c.getParents(),
+                c.getTime().getEpochSecond(), c.getTime().getNano(),
+                c.getZoneOffset(), offset, msg.length);
+        append(_messageFile, msg);
+        append(_indexFile, record(info));
+        _commits.put(id, info);
+    }
+
+    /** Rewrite the index so that it holds only the commits in KEEP,
+     *  dropping the messages of the others. */
+    void retain(Set<ObjectId> keep) {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        LinkedHashMap<ObjectId, CommitInfo> kept =
+            new LinkedHashMap<ObjectId, CommitInfo>();
+        for (Map.Entry<ObjectId, CommitInfo> e : _commits.entrySet()) {
+            if (!keep.contains(e.getKey())) {
+                continue;
+            }
+            CommitInfo old = e.getValue();
+            byte[] msg = old.getMessage().getBytes(StandardCharsets.UTF_8);
+            CommitInfo info = new CommitInfo(this, old.getHash(),
+                    old.getParents(), old.getTime().getEpochSecond(),
+                    old.nanos(), old.zoneOffset(), messages.size(),
+                    msg.length);
+            messages.write(msg, 0, msg.length);
+            byte[] rec = record(info);
+            records.write(rec, 0, rec.length);
+            kept.put(e.getKey(), info);
+        }
+        WriteBatch.replace(_messageFile, messages.toByteArray());
+        WriteBatch.replace(_indexFile, records.toByteArray());
+        _commits.clear();
+        _commits.putAll(kept);
+    }
+
+    /** Return the message of LENGTH bytes at OFFSET in the message
+     *  file. */
+    String readMessage(long offset, int length) {
+        try (RandomAccessFile in = new RandomAccessFile(_messageFile, "r")) {
+            byte[] buf = new byte[length];
+            in.seek(offset);
+            in.readFully(buf);
+            return new String(buf, StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the next record of IN, or null at the end of the index.
+     *  Throws EOFException if the record is incomplete. */
+    private CommitInfo readRecord(DataInputStream in) throws IOException {
+        byte[] hash = new byte[ObjectId.BYTES];
+        int n = in.read(hash);
+        if (n < 0) {
+            return null;
+        } else if (n < ObjectId.BYTES) {
+            in.readFully(hash, n, ObjectId.BYTES - n);
+        }
+        String[] parents = new String[in.readUnsignedByte()];
+        for (int i = 0; i < parents.length; i += 1) {
+            byte[] p = new byte[ObjectId.BYTES];
+            in.readFully(p);
+            parents[i] = ObjectId.toHex(p);
+        }
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        int zone = in.readInt();
+        long msgOffset = in.readLong();
+        int msgLength = in.readInt();
+        return new CommitInfo(this, ObjectId.toHex(hash), parents, seconds,
+                nanos, zone, msgOffset, msgLength);
+    }
+
+    /** Return the bytes of the record for INFO. */
+    private static byte[] record(CommitInfo info) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(ObjectId.hexBytes(info.getHash()));
+            out.writeByte(info.getParents().length);
+            for (String p : info.getParents()) {
+                out.write(ObjectId.hexBytes(p));
+            }
+            out.writeLong(info.getTime().getEpochSecond());
+            out.writeInt(info.nanos());
+            out.writeInt(info.zoneOffset());
+            out.writeLong(info.messageOffset());
+            out.writeInt(info.messageLength());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the size in bytes of the record for INFO. */
+    private static long recordSize(CommitInfo info) {
+        return ObjectId.BYTES + 1 + ObjectId.BYTES * info.getParents().length
+            + FIXED_BYTES;
+    }
+
+    /** Append DATA to FILE, which is made durable with the next batch
+     *  of writes. */
+    private static void append(File file, byte[] data) {
+        try (BufferedOutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file, true))) {
+            out.write(data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        WriteBatch.touched(file);
+    }
+
+    /** Cut the index file down to its first LENGTH bytes. */
+    private void truncate(long length) {
+        try (RandomAccessFile f = new RandomAccessFile(_indexFile, "rw")) {
+            f.setLength(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Name of the index file. */
+    static final String INDEX_NAME = "commit-index";
+    /** Name of the message file. */
+    static final String MESSAGE_NAME = "commit-messages";
+    /** Bytes of a record after its hashes: time, zone and message. */
+    private static final int FIXED_BYTES = 8 + 4 + 4 + 8 + 4;
+
+    /** The file of records. */
+    private final File _indexFile;
+    /** The file of messages. */
+    private final File _messageFile;
+    /** Indexed commits, in the order added. */
+    private final LinkedHashMap<ObjectId, CommitInfo> _commits;
+}
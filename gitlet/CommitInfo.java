@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * The metadata of one commit as recorded in the commit index: its hash,
+ * parents, time and message, without its file tree.
+ *  @author Tiffany Kim */
+
+class CommitInfo {
+
+    /** Metadata of commit HASH with PARENTS, made at EPOCHSECOND plus
+     *  NANOS in zone offset OFFSET, whose message is MESSAGELENGTH
+     *  bytes at MESSAGEOFFSET in the message file of INDEX. */
+    CommitInfo(CommitIndex index, String hash, String[] parents,
+               long epochSecond, int nanos, int offset,
+               long messageOffset, int messageLength) {
+        _index = index;
+        _hash = hash;
+        _parents = parents;
+        _epochSecond = epochSecond;
+        _nanos = nanos;
+        _offset = offset;
+        _messageOffset = messageOffset;
+        _messageLength = messageLength;
+    }
+
+    /** Metadata of commit HASH with PARENTS, made at EPOCHSECOND plus
+     *  NANOS in zone offset OFFSET, with message MESSAGE, that is held
+     *  only in memory. */
+    CommitInfo(String hash, String[] parents, long epochSecond, int nanos,
+               int offset, String message) {
+        this(null, hash, parents, epochSecond, nanos, offset, -1, -1);
+        _message = message;
+    }
+
+    /** Return the hash of the commit. */
+    String getHash() {
+        return _hash;
+    }
+
+    /** Return the parents of the commit, first parent first. */
+    String[] getParents() {
+        return _parents;
+    }
+
+    /** Return the time of the commit. */
+    Instant getTime() {
+        return Instant.ofEpochSecond(_epochSecond, _nanos);
+    }
+
+    /** Return the commit message, reading it on first use. */
+    String getMessage() {
+        if (_message == null) {
+            _message = _index.readMessage(_messageOffset, _messageLength);
+        }
+        return _message;
+    }
+
+    /** Return the offset of the message in the message file. */
+    long messageOffset() {
+        return _messageOffset;
+    }
+
+    /** Return the length of the message in bytes. */
+    int messageLength() {
+        return _messageLength;
+    }
+
+    /** Return the zone offset of the commit time in seconds. */
+    int zoneOffset() {
+        return _offset;
+    }
+
+    /** Return the nanoseconds part of the commit time. */
+    int nanos() {
+        return _nanos;
+    }
+
+    /** Return the commit time as it is shown in logs. */
+    String timeToString() {
+        return OffsetDateTime.ofInstant(getTime(),
+                ZoneOffset.ofTotalSeconds(_offset)).format(Commit.DTF);
+    }
+
+    /** Log entry for the commit. */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(LOG_ENTRY_SIZE);
+        out.append("===\ncommit ").append(_hash).append('\n');
+        if (_parents.length > 1) {
+            out.append("Merge:");
+            for (String p : _parents) {
+                out.append(' ').append(p, 0, SHORT_HASH);
+            }
+            out.append('\n');
+        }
+        out.append("Date: ").append(timeToString()).append('\n');
+        out.append(getMessage()).append('\n');
+        return out.toString();
+    }
+
+    /** Return a one-line summary for log. */
+    String toOneLine() {
+        return _hash.substring(0, SHORT_HASH) + " " + getMessage();
+    }
+
+    /** Length of an abbreviated hash. */
+    static final int SHORT_HASH = 7;
+    /** Typical length of a log entry. */
+    private static final int LOG_ENTRY_SIZE = 160;
+
+    /** Index holding the message. */
+    private final CommitIndex _index;
+    /** Hash of the commit. */
+    private final String _hash;
+    /** Parent hashes. */
+    private final String[] _parents;
+    /** Seconds of the commit time since the epoch. */
+    private final long _epochSecond;
+    /** Nanoseconds part of the commit time. */
+    private final int _nanos;
+    /** Zone offset of the commit time, in seconds. */
+    private final int _offset;
+    /** Offset of the message in the message file. */
+    private final long _messageOffset;
+    /** Length of the message in bytes. */
+    private final int _messageLength;
+    /** Message, once read. */
+    private String _message;
+}
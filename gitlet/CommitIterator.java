@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Iterates lazily over a commit and all of its ancestors, newest first.
+ * Every parent of a merge is followed. Only commit metadata from the
+ * commit index is used, so no commit or file tree is deserialized.
+ *  @author Tiffany Kim */
+
+class CommitIterator implements Iterator<CommitInfo> {
+
+    /** Iterate over the history of commit START in INDEX. */
+    CommitIterator(CommitIndex index, String start) {
+        _index = index;
+        _queue = new PriorityQueue<CommitInfo>(NEWEST_FIRST);
+        _seen = new HashSet<String>();
+        push(start);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !_queue.isEmpty();
+    }
+
+    @Override
+    public CommitInfo next() {
+        CommitInfo c = _queue.poll();
+        if (c == null) {
+            throw new NoSuchElementException();
+        }
+        for (String parent : c.getParents()) {
+            push(parent);
+        }
+        return c;
+    }
+
+    /** Queue the commit HASH unless it is not indexed or already
+     *  seen. */
+    private void push(String hash) {
+        CommitInfo c = _index.get(hash);
+        if (c != null && _seen.add(hash)) {
+            _queue.add(c);
+        }
+    }
+
+    /** Orders commits from newest to oldest. */
+    private static final Comparator<CommitInfo> NEWEST_FIRST =
+        new Comparator<CommitInfo>() {
+            @Override
+            public int compare(CommitInfo a, CommitInfo b) {
+                return b.getTime().compareTo(a.getTime());
+            }
+        };
+
+    /** Index of the commits. */
+    private final CommitIndex _index;
+    /** Commits reached but not yet returned. */
+    private final PriorityQueue<CommitInfo> _queue;
+    /** Hashes of all commits reached. */
+    private final HashSet<String> _seen;
+}
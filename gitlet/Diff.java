@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line-level differences between two files, computed with the
+ * linear-space variant of Myers' O(ND) algorithm.
+ *  @author Tiffany Kim */
+
+class Diff {
+
+    /** A region of lines [aStart, aEnd) of the old file replaced by
+     *  the lines [bStart, bEnd) of the new file. */
+    static class Edit {
+        /** An edit replacing old lines A0..A1 with new lines B0..B1. */
+        Edit(int a0, int a1, int b0, int b1) {
+            aStart = a0;
+            aEnd = a1;
+            bStart = b0;
+            bEnd = b1;
+        }
+
+        /** First replaced line of the old file. */
+        final int aStart;
+        /** End of the replaced lines of the old file. */
+        final int aEnd;
+        /** First inserted line of the new file. */
+        final int bStart;
+        /** End of the inserted lines of the new file. */
+        final int bEnd;
+    }
+
+    /** A difference between the lines of A and B. */
+    private Diff(MappedLines a, MappedLines b) {
+        _a = a;
+        _b = b;
+        _edits = new ArrayList<Edit>();
+    }
+
+    /** Return the edits, in order, that turn A into B. */
+    static List<Edit> edits(MappedLines a, MappedLines b) {
+        Diff d = new Diff(a, b);
+        d.compare(0, a.size(), 0, b.size());
+        return d._edits;
+    }
+
+    /** Find the edits turning lines ALO..AHI of the old file into
+     *  lines BLO..BHI of the new file. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a.same(aLo, _b, bLo)) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a.same(aHi - 1, _b, bHi - 1)) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo != aHi || bLo != bHi) {
+                addEdit(aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        compare(aLo, snake[0], bLo, snake[1]);
+        compare(snake[2], aHi, snake[3], bHi);
+    }
+
+    /** Return the middle snake {x0, y0, x1, y1} of an optimal edit
+     *  path from (ALO, BLO) to (AHI, BHI). */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int max = (n + m + 1) / 2;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int off = max + 1;
+        int[] vf = new int[2 * max + 3];
+        int[] vb = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _a.same(aLo + x, _b, bLo + y)) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int kr = delta - k;
+                if (odd && kr >= -(d - 1) && kr <= d - 1
+                        && x + vb[off + kr] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int kr = -d; kr <= d; kr += 2) {
+                int x;
+                if (kr == -d
+                        || (kr != d && vb[off + kr - 1] < vb[off + kr + 1])) {
+                    x = vb[off + kr + 1];
+                } else {
+                    x = vb[off + kr - 1] + 1;
+                }
+                int y = x - kr;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                        && _a.same(aHi - x - 1, _b, bHi - y - 1)) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + kr] = x;
+                int k = delta - kr;
+                if (!odd && k >= -d && k <= d && vf[off + k] + x >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Record an edit of old lines A0..A1 into new lines B0..B1,
+     *  joining it to the previous edit if they touch. */
+    private void addEdit(int a0, int a1, int b0, int b1) {
+        int last = _edits.size() - 1;
+        if (last >= 0) {
+            Edit prev = _edits.get(last);
+            if (prev.aEnd == a0 && prev.bEnd == b0) {
+                _edits.set(last, new Edit(prev.aStart, a1, prev.bStart, b1));
+                return;
+            }
+        }
+        _edits.add(new Edit(a0, a1, b0, b1));
+    }
+
+    /** Write the differences between versions A and B of file PATH to
+     *  OUT as a unified diff. OLDEXISTS and NEWEXISTS are false for a
+     *  version that is absent. Write nothing if A and B are the same. */
+    static void writeUnified(OutputStream out, String path,
+                             boolean oldExists, boolean newExists,
+                             MappedLines a, MappedLines b)
+        throws IOException {
+        List<Edit> edits = edits(a, b);
+        if (edits.isEmpty()) {
+            return;
+        }
+        print(out, "diff --gitlet a/%s b/%s\n", path, path);
+        print(out, "--- %s\n+++ %s\n", oldExists ? "a/" + path : NULL_NAME,
+                newExists ? "b/" + path : NULL_NAME);
+        int i = 0;
+        while (i < edits.size()) {
+            int j = i;
+            while (j + 1 < edits.size()
+                    && edits.get(j + 1).aStart - edits.get(j).aEnd
+                    <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Edit first = edits.get(i), last = edits.get(j);
+            int aFrom = Math.max(0, first.aStart - CONTEXT);
+            int aTo = Math.min(a.size(), last.aEnd + CONTEXT);
+            int bFrom = first.bStart - (first.aStart - aFrom);
+            int bTo = last.bEnd + (aTo - last.aEnd);
+            print(out, "@@ -%s +%s @@\n", range(aFrom, aTo),
+                    range(bFrom, bTo));
+            int p = aFrom;
+            for (int k = i; k <= j; k += 1) {
+                Edit e = edits.get(k);
+                writeLines(out, ' ', a, p, e.aStart);
+                writeLines(out, '-', a, e.aStart, e.aEnd);
+                writeLines(out, '+', b, e.bStart, e.bEnd);
+                p = e.aEnd;
+            }
+            writeLines(out, ' ', a, p, aTo);
+            i = j + 1;
+        }
+    }
+
+    /** Return the hunk header range for lines FROM..TO. */
+    private static String range(int from, int to) {
+        int len = to - from;
+        return String.format("%d,%d", len == 0 ? from : from + 1, len);
+    }
+
+    /** Write lines FROM..TO of LINES to OUT, each prefixed by TAG. */
+    private static void writeLines(OutputStream out, char tag,
+                                   MappedLines lines, int from, int to)
+        throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(tag);
+            lines.write(i, out);
+            if (!lines.terminated(i)) {
+                out.write(NO_NEWLINE);
+            }
+        }
+    }
+
+    /** Write String.format(FORMAT, ARGS) to OUT. */
+    private static void print(OutputStream out, String format,
+                              Object... args) throws IOException {
+        out.write(String.format(format, args)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Lines of context around each change. */
+    static final int CONTEXT = 3;
+    /** Name shown for an absent version of a file. */
+    private static final String NULL_NAME = "/dev/null";
+    /** Marker following a final line without a newline. */
+    private static final byte[] NO_NEWLINE =
+        "\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    /** The old file. */
+    private final MappedLines _a;
+    /** The new file. */
+    private final MappedLines _b;
+    /** Edits found so far. */
+    private final List<Edit> _edits;
+}
@@ -0,0 +1,265 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The names of the files in a folder tree that have changed, kept up to
+ * date by a WatchService, for programs that keep a repository open
+ * across many commands, such as status --watch. Names are relative to
+ * the root of the tree, as in WorkTree. Every folder is watched; when a
+ * folder is created it is watched in turn and the files already in it
+ * are counted as changed.
+ * The name of a deleted folder stands for everything that was under it.
+ * Ignored files are not reported and ignored folders are not watched.
+ * The set cannot always be trusted: the first call of drain, an
+ * overflow of the event queue, or losing the watch on the root means the
+ * caller must scan the whole tree instead.
+ *
+ * Events arrive some time after the changes they report. Before the set
+ * is handed out, a cookie file is created in the root and events are
+ * read until its creation is seen, so that every change made before the
+ * call is included.
+ *  @author Tiffany Kim */
+
+class DirtySet {
+
+    /** A watch through SERVICE on the tree under folder DIR, leaving out
+     *  what IGNORE ignores. */
+    private DirtySet(Path dir, WatchService service, Ignore ignore) {
+        _dir = dir;
+        _service = service;
+        _ignore = ignore;
+        _folders = new HashMap<WatchKey, String>();
+        _changed = new HashSet<String>();
+    }
+
+    /** Return a new watch on the files under folder DIR that IGNORE
+     *  does not ignore. */
+    static DirtySet watch(File dir, Ignore ignore) {
+        Path path = dir.toPath().toAbsolutePath().normalize();
+        try {
+            DirtySet result = new DirtySet(path,
+                    path.getFileSystem().newWatchService(), ignore);
+            result.register(path);
+            result._key = path.register(result._service, KINDS);
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the names of the files created, changed or deleted since
+     *  the last call, and start a new set. Return null if the set is
+     *  unknown and the tree must be scanned in full. */
+    Set<String> drain() {
+        boolean complete = settle() && _primed && !_overflowed
+            && _key.isValid();
+        Set<String> result = _changed;
+        _changed = new HashSet<String>();
+        _overflowed = false;
+        _primed = true;
+        return complete ? result : null;
+    }
+
+    /** Wait at most MILLIS milliseconds for a change to the tree. Return
+     *  true iff one has been seen since the last drain, or the set can
+     *  no longer be trusted. The changes are kept for drain. */
+    boolean await(long millis) {
+        try {
+            WatchKey key = _service.poll(millis, TimeUnit.MILLISECONDS);
+            for (; key != null; key = _service.poll()) {
+                record(key, null);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            _overflowed = true;
+        }
+        return !_changed.isEmpty() || _overflowed || !_key.isValid();
+    }
+
+    /** Note that events may have been lost, as when the event queue
+     *  overflows, so that the next drain asks for a full scan. */
+    void lost() {
+        _overflowed = true;
+    }
+
+    /** Stop watching. */
+    void close() {
+        try {
+            _service.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff NAME is one of the cookie files made by drain,
+     *  which are never part of the working folder. */
+    static boolean isCookie(String name) {
+        return name.startsWith(COOKIE_PREFIX);
+    }
+
+    /** Watch folder DIR and every folder under it. */
+    private void register(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path sub,
+                    BasicFileAttributes attrs) throws IOException {
+                if (!sub.equals(_dir)
+                        && (WorkTree.excluded(sub.getFileName().toString())
+                            || _ignore.ignored(name(sub), true))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                _folders.put(sub.register(_service, KINDS), name(sub));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file,
+                    IOException excp) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Return the name of PATH relative to the root. */
+    private String name(Path path) {
+        return _dir.relativize(path).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /** Read all events caused by changes made before now. Return false
+     *  if that cannot be confirmed. */
+    private boolean settle() {
+        _cookies += 1;
+        String cookie = COOKIE_PREFIX + ProcessHandle.current().pid()
+            + "-" + _cookies;
+        Path file = _dir.resolve(cookie);
+        try {
+            Files.createFile(file);
+        } catch (IOException excp) {
+            return false;
+        }
+        try {
+            long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(COOKIE_WAIT);
+            while (true) {
+                long left = deadline - System.nanoTime();
+                WatchKey key = left <= 0 ? null
+                    : _service.poll(left, TimeUnit.NANOSECONDS);
+                if (key == null) {
+                    return false;
+                } else if (record(key, cookie)) {
+                    break;
+                }
+            }
+            for (WatchKey key = _service.poll(); key != null;
+                 key = _service.poll()) {
+                record(key, cookie);
+            }
+            return true;
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException excp) {
+                /* A cookie left behind is ignored, like any other. */
+            }
+        }
+    }
+
+    /** Add the files named by the events of KEY to the set, watching any
+     *  new folders. Return true iff one of the events is the creation of
+     *  COOKIE, which may be null. */
+    private boolean record(WatchKey key, String cookie) {
+        boolean seen = false;
+        String folder = _folders.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || folder == null) {
+                lost();
+                continue;
+            }
+            String name = event.context().toString();
+            if (key == _key && isCookie(name)) {
+                seen |= name.equals(cookie)
+                    && event.kind() == StandardWatchEventKinds.ENTRY_CREATE;
+            } else if (!WorkTree.excluded(name)) {
+                recordEntry(folder.length() == 0 ? name : folder + "/" + name,
+                        event.kind());
+            }
+        }
+        if (!key.reset()) {
+            _folders.remove(key);
+            _overflowed |= key == _key;
+        }
+        return seen;
+    }
+
+    /** Note an event of kind KIND on the entry NAME. A new folder is
+     *  watched and its files noted; other changes to folders are not
+     *  changes to files and are ignored. */
+    private void recordEntry(String name, WatchEvent.Kind<?> kind) {
+        Path path = _dir.resolve(name);
+        boolean dir = Files.isDirectory(path);
+        if (_ignore.ignored(name, dir)) {
+            return;
+        } else if (!dir) {
+            _changed.add(name);
+        } else if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            _changed.add(name);
+            try {
+                register(path);
+            } catch (IOException excp) {
+                _overflowed = true;
+            }
+            _changed.addAll(WorkTree.files(_dir.toFile(), name, _ignore));
+        }
+    }
+
+    /** Events watched for. */
+    private static final WatchEvent.Kind<?>[] KINDS = {
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY
+    };
+    /** Prefix of the names of cookie files. */
+    static final String COOKIE_PREFIX = ".gitlet-cookie-";
+    /** Longest wait for a cookie's event, in milliseconds. */
+    private static final long COOKIE_WAIT = 1000;
+
+    /** Root of the tree watched. */
+    private final Path _dir;
+    /** Source of events. */
+    private final WatchService _service;
+    /** Rules of files to leave out. */
+    private final Ignore _ignore;
+    /** Registration of the root with _service. */
+    private WatchKey _key;
+    /** Names of the folders watched, by their keys. */
+    private final Map<WatchKey, String> _folders;
+    /** Names of files changed since the last drain. */
+    private Set<String> _changed;
+    /** True iff events may have been lost since the last drain. */
+    private boolean _overflowed;
+    /** True once drain has been called, so that a full scan has been
+     *  made since watching began. */
+    private boolean _primed;
+    /** Number of cookies made. */
+    private int _cookies;
+}
@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A check of the integrity of the object store. Commits are parsed and
+ * their parents and tree entries looked up; blobs are rehashed and
+ * compared with their names. Work is spread over all cores.
+ *  @author Tiffany Kim */
+
+class Fsck {
+
+    /** A check of the objects in directory DIR, where HEADS are the
+     *  branch heads, STAGED the blobs of the staging area, COMMITS all
+     *  commits the repository records and SHALLOW the commits whose
+     *  parents were deliberately not fetched. Missing blobs are not
+     *  problems if PROMISED, as a remote will supply them. */
+    Fsck(File dir, Collection<String> heads, Collection<String> staged,
+         Collection<String> commits, Collection<String> shallow,
+         boolean promised) {
+        _dir = dir;
+        _promised = promised;
+        _shallow = new HashSet<String>(shallow);
+        _heads = new HashSet<String>(heads);
+        _staged = new HashSet<String>(staged);
+        _commits = new HashSet<String>(commits);
+        _problems = ConcurrentHashMap.newKeySet();
+        _reached = ConcurrentHashMap.newKeySet();
+        _blobs = new ConcurrentHashMap<String, String>();
+        _checked = ConcurrentHashMap.newKeySet();
+    }
+
+    /** Check every object reachable from a branch head or the staging
+     *  area and, unless QUICK, every other object as well. Return the
+     *  problems found, in order. */
+    List<String> run(boolean quick) {
+        walkCommits();
+        for (String blob : _staged) {
+            _blobs.putIfAbsent(blob, "staging area");
+        }
+        _blobs.keySet().parallelStream().forEach(this::checkBlob);
+        if (!quick) {
+            List<String> names = Utils.plainFilenamesIn(_dir);
+            names.parallelStream()
+                .filter(n -> Utils.isObjectName(n) && !_checked.contains(n))
+                .forEach(this::checkUnreachable);
+        }
+        return new ArrayList<String>(new TreeSet<String>(_problems));
+    }
+
+    /** Return the number of objects checked. */
+    int checked() {
+        return _checked.size();
+    }
+
+    /** Visit every commit reachable from the branch heads, one
+     *  generation at a time, checking the commits of each generation in
+     *  parallel. */
+    private void walkCommits() {
+        Set<String> frontier = new HashSet<String>(_heads);
+        while (!frontier.isEmpty()) {
+            _reached.addAll(frontier);
+            Set<String> next = ConcurrentHashMap.newKeySet();
+            frontier.parallelStream().forEach(c -> {
+                for (String p : checkCommit(c, true)) {
+                    if (!_reached.contains(p)) {
+                        next.add(p);
+                    }
+                }
+            });
+            frontier = next;
+        }
+    }
+
+    /** Check commit HASH, noting the blobs it refers to if REACHABLE.
+     *  Return its parents, or none if it is shallow. */
+    private String[] checkCommit(String hash, boolean reachable) {
+        _checked.add(hash);
+        File file = new File(_dir, hash);
+        if (!file.isFile()) {
+            _problems.add("missing commit " + hash);
+            return new String[0];
+        }
+        Commit c;
+        try {
+            c = Utils.readObject(file, Commit.class);
+        } catch (IllegalArgumentException excp) {
+            _problems.add("corrupt commit " + hash);
+            return new String[0];
+        }
+        if (!hash.equals(c.getHash())) {
+            _problems.add("corrupt commit " + hash);
+        }
+        for (String blob : c.getTree().values()) {
+            if (reachable) {
+                _blobs.putIfAbsent(blob, "commit " + hash);
+            } else if (!_promised && !new File(_dir, blob).isFile()) {
+                _problems.add(String.format("missing blob %s (in commit %s)",
+                        blob, hash));
+            }
+        }
+        if (_shallow.contains(hash)) {
+            return new String[0];
+        }
+        for (String p : c.getParents()) {
+            if (!new File(_dir, p).isFile()) {
+                _problems.add(String.format(
+                        "missing commit %s (parent of %s)", p, hash));
+            }
+        }
+        return c.getParents();
+    }
+
+    /** Check that blob HASH exists and has contents with that hash. A
+     *  chunked blob's chunks are checked as well. */
+    private void checkBlob(String hash) {
+        _checked.add(hash);
+        File file = new File(_dir, hash);
+        if (!file.isFile()) {
+            if (!_promised) {
+                _problems.add(String.format("missing blob %s (in %s)",
+                        hash, _blobs.get(hash)));
+            }
+            return;
+        }
+        List<String> chunks = Blobs.chunks(_dir, hash);
+        if (chunks.isEmpty()) {
+            if (!hash.equals(Blobs.hash(file))) {
+                _problems.add("corrupt blob " + hash);
+            }
+            return;
+        }
+        MessageDigest whole = newDigest();
+        boolean complete = true;
+        for (String chunk : chunks) {
+            _checked.add(chunk);
+            File part = new File(_dir, chunk);
+            if (!part.isFile()) {
+                _problems.add(String.format("missing chunk %s (in blob %s)",
+                        chunk, hash));
+                complete = false;
+                continue;
+            }
+            byte[] data = Utils.readContents(part);
+            if (!chunk.equals(Utils.sha1(data))) {
+                _problems.add("corrupt chunk " + chunk);
+            }
+            whole.update(data);
+        }
+        if (complete && !hash.equals(ObjectId.toHex(whole.digest()))) {
+            _problems.add("corrupt blob " + hash);
+        }
+    }
+
+    /** Check object NAME, which no branch head reaches. */
+    private void checkUnreachable(String name) {
+        if (_commits.contains(name)) {
+            checkCommit(name, false);
+            _problems.add("unreachable commit " + name);
+        } else {
+            checkBlob(name);
+            _problems.add("unreachable blob " + name);
+        }
+    }
+
+    /** Return a new SHA-1 digest. */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                "System does not support SHA-1");
+        }
+    }
+
+    /** Object directory. */
+    private final File _dir;
+    /** Branch heads. */
+    private final Set<String> _heads;
+    /** Blobs in the staging area. */
+    private final Set<String> _staged;
+    /** True iff missing blobs are expected. */
+    private final boolean _promised;
+    /** Commits whose parents are not expected to be present. */
+    private final Set<String> _shallow;
+    /** Commits the repository records. */
+    private final Set<String> _commits;
+    /** Problems found. */
+    private final Set<String> _problems;
+    /** Commits reached from the heads. */
+    private final Set<String> _reached;
+    /** Reachable blobs, each with a place that refers to it. */
+    private final Map<String, String> _blobs;
+    /** Objects checked. */
+    private final Set<String> _checked;
+}
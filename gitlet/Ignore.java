@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of a .gitletignore file, compiled for matching. Each line
+ * is a pattern; blank lines and lines starting with '#' are skipped. A
+ * pattern ending in '/' matches only folders, and one starting with '!'
+ * brings back what an earlier pattern ignored. A pattern with a '/'
+ * elsewhere is matched against the whole path from the root; any other
+ * pattern against the last component at every depth. '*' and '?' match
+ * within a component, '[...]' matches a set of characters, and '**'
+ * matches any number of folders. The last pattern that matches decides.
+ *
+ * Patterns without wildcards go into tries keyed by path component, so
+ * a lookup costs one probe per component however many patterns there
+ * are. The others are compiled to regular expressions, tried only if
+ * they come after the best literal match. As in Git, a file in an
+ * ignored folder cannot be brought back, so a walk may skip ignored
+ * folders without entering them.
+ *  @author Tiffany Kim */
+
+class Ignore {
+
+    /** Rules compiled from the pattern lines LINES. */
+    Ignore(List<String> lines) {
+        _names = new Node();
+        _paths = new Node();
+        _globs = new ArrayList<Glob>();
+        ArrayList<Boolean> negated = new ArrayList<Boolean>();
+        for (String line : lines) {
+            line = line.strip();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            boolean negate = line.startsWith("!");
+            if (negate) {
+                line = line.substring(1);
+            }
+            boolean dirOnly = line.endsWith("/");
+            while (line.endsWith("/")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            boolean anchored = line.indexOf('/') >= 0;
+            while (line.startsWith("/")) {
+                line = line.substring(1);
+            }
+            if (line.length() == 0) {
+                continue;
+            }
+            int rule = negated.size();
+            negated.add(negate);
+            if (!isGlob(line)) {
+                (anchored ? _paths : _names).insert(line.split("/"), rule,
+                        dirOnly);
+            } else {
+                _globs.add(new Glob(rule, anchored, dirOnly, toRegex(line)));
+            }
+        }
+        _negated = new boolean[negated.size()];
+        for (int i = 0; i < _negated.length; i += 1) {
+            _negated[i] = negated.get(i);
+        }
+    }
+
+    /** Return the rules of the .gitletignore file in folder ROOT, or no
+     *  rules if it has none. */
+    static Ignore load(File root) {
+        File file = new File(root, FILE);
+        if (!file.isFile()) {
+            return new Ignore(new ArrayList<String>());
+        }
+        Ignore result = new Ignore(
+            Arrays.asList(Utils.readContentsAsString(file).split("\n")));
+        result._stamp = stamp(root);
+        return result;
+    }
+
+    /** Return true iff the .gitletignore file in ROOT is not the one
+     *  these rules were loaded from. */
+    boolean stale(File root) {
+        return _stamp != stamp(root);
+    }
+
+    /** Leave out, as if ignored, the entries outside the cone of SPARSE,
+     *  or nothing more if it is null. Return these rules. */
+    Ignore within(Sparse sparse) {
+        _sparse = sparse;
+        return this;
+    }
+
+    /** Return true iff the entry PATH, a folder if DIR, is ignored, when
+     *  the folders above it are not. */
+    boolean ignored(String path, boolean dir) {
+        if (_sparse != null
+                && !(dir ? _sparse.enters(path) : _sparse.includes(path))) {
+            return true;
+        }
+        String base = path.substring(path.lastIndexOf('/') + 1);
+        int best = Math.max(_names.lookup(new String[] {base}, dir),
+                _paths.lookup(path.split("/"), dir));
+        for (int i = _globs.size() - 1;
+             i >= 0 && _globs.get(i).rule > best; i -= 1) {
+            Glob g = _globs.get(i);
+            if ((dir || !g.dirOnly)
+                    && g.regex.matcher(g.anchored ? path : base).matches()) {
+                best = g.rule;
+                break;
+            }
+        }
+        return best >= 0 && !_negated[best];
+    }
+
+    /** Return true iff the file PATH or a folder above it is ignored. */
+    boolean ignoredPath(String path) {
+        for (int end = path.indexOf('/'); end >= 0;
+             end = path.indexOf('/', end + 1)) {
+            if (ignored(path.substring(0, end), true)) {
+                return true;
+            }
+        }
+        return ignored(path, false);
+    }
+
+    /** Return true iff there are no rules. */
+    boolean isEmpty() {
+        return _negated.length == 0 && _sparse == null;
+    }
+
+    /** Return a number that changes when the .gitletignore file in ROOT
+     *  is changed, created or removed. */
+    private static long stamp(File root) {
+        File file = new File(root, FILE);
+        return file.isFile() ? file.lastModified() * STAMP_MIX + file.length()
+            : 0;
+    }
+
+    /** Return true iff PATTERN has wildcards. */
+    static boolean isGlob(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0
+            || pattern.indexOf('[') >= 0 || pattern.indexOf('\\') >= 0;
+    }
+
+    /** Return the regular expression matching the same paths as the
+     *  glob PATTERN. */
+    static Pattern toRegex(String pattern) {
+        StringBuilder re = new StringBuilder();
+        int n = pattern.length();
+        for (int i = 0; i < n; i += 1) {
+            char c = pattern.charAt(i);
+            if (pattern.startsWith("**/", i) && (i == 0
+                    || pattern.charAt(i - 1) == '/')) {
+                re.append("(?:.*/)?");
+                i += 2;
+            } else if (pattern.startsWith("**", i) && i + 2 == n
+                    && (i == 0 || pattern.charAt(i - 1) == '/')) {
+                re.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                re.append("[^/]*");
+            } else if (c == '?') {
+                re.append("[^/]");
+            } else if (c == '[' && pattern.indexOf(']', i + 2) > 0) {
+                int close = pattern.indexOf(']', i + 2);
+                String set = pattern.substring(i + 1, close);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                re.append('[').append(set.replace("\\", "\\\\")
+                        .replace("[", "\\[")).append(']');
+                i = close;
+            } else if (c == '\\' && i + 1 < n) {
+                i += 1;
+                re.append(Pattern.quote(String.valueOf(pattern.charAt(i))));
+            } else {
+                re.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(re.toString());
+    }
+
+    /** A node of a trie of path components. */
+    private static class Node {
+
+        /** Add the path COMPONENTS as matched by rule RULE, which matches
+         *  only folders if DIRONLY. */
+        void insert(String[] components, int rule, boolean dirOnly) {
+            Node node = this;
+            for (String c : components) {
+                if (node.next == null) {
+                    node.next = new HashMap<String, Node>();
+                }
+                node = node.next.computeIfAbsent(c, k -> new Node());
+            }
+            if (dirOnly) {
+                node.dirRule = rule;
+            } else {
+                node.anyRule = rule;
+            }
+        }
+
+        /** Return the last rule matching the path COMPONENTS, a folder
+         *  if DIR, or -1 if none does. */
+        int lookup(String[] components, boolean dir) {
+            Node node = this;
+            for (String c : components) {
+                node = node.next == null ? null : node.next.get(c);
+                if (node == null) {
+                    return -1;
+                }
+            }
+            return dir ? Math.max(node.anyRule, node.dirRule) : node.anyRule;
+        }
+
+        /** Children, by component. */
+        private HashMap<String, Node> next;
+        /** Last rule ending here that matches files and folders. */
+        private int anyRule = -1;
+        /** Last rule ending here that matches only folders. */
+        private int dirRule = -1;
+    }
+
+    /** A pattern with wildcards. */
+    private static class Glob {
+
+        /** Rule number RULE, matched against whole paths if ANCHORED and
+         *  only against folders if DIRONLY, by REGEX. */
+        Glob(int rule, boolean anchored, boolean dirOnly, Pattern regex) {
+            this.rule = rule;
+            this.anchored = anchored;
+            this.dirOnly = dirOnly;
+            this.regex = regex;
+        }
+
+        /** Position of the pattern in the file. */
+        private final int rule;
+        /** True iff matched against the whole path. */
+        private final boolean anchored;
+        /** True iff it matches only folders. */
+        private final boolean dirOnly;
+        /** Compiled pattern. */
+        private final Pattern regex;
+    }
+
+    /** Name of the file of rules. */
+    static final String FILE = ".gitletignore";
+    /** Spreads modification times in stamps. */
+    private static final long STAMP_MIX = 1000003;
+
+    /** Literal patterns matched against the last path component. */
+    private final Node _names;
+    /** Literal patterns matched against the whole path. */
+    private final Node _paths;
+    /** Patterns with wildcards, in order. */
+    private final List<Glob> _globs;
+    /** Whether each rule, by position, is negated. */
+    private final boolean[] _negated;
+    /** Stamp of the file the rules came from. */
+    private long _stamp;
+    /** The cone outside which entries are left out, or null. */
+    private Sparse _sparse;
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Options of the log and global-log commands: how many commits to show,
+ * the range of commit times to show, the paths they must change, and
+ * the output format. Paths follow "--" and take up the rest of the
+ * arguments.
+ *  @author Tiffany Kim */
+
+class LogOptions {
+
+    /** Return the options in ARGS, starting at ARGS[FROM]. Throws a
+     *  GitletException if they are malformed. */
+    static LogOptions parse(String[] args, int from) {
+        LogOptions opts = new LogOptions();
+        for (int i = from; i < args.length; i += 1) {
+            String arg = args[i];
+            if (arg.equals("--")) {
+                opts.paths.addAll(Arrays.asList(args).subList(i + 1,
+                        args.length));
+                break;
+            } else if (arg.equals("--oneline")) {
+                opts.oneline = true;
+            } else if (arg.equals("-n") && i + 1 < args.length) {
+                i += 1;
+                opts.limit = parseCount(args[i]);
+            } else if (arg.startsWith("-n") && arg.length() > 2) {
+                opts.limit = parseCount(arg.substring(2));
+            } else if (arg.startsWith("--since=")) {
+                opts.since = parseTime(arg.substring("--since=".length()));
+            } else if (arg.startsWith("--until=")) {
+                opts.until = parseTime(arg.substring("--until=".length()));
+            } else if (arg.equals("--since") && i + 1 < args.length) {
+                i += 1;
+                opts.since = parseTime(args[i]);
+            } else if (arg.equals("--until") && i + 1 < args.length) {
+                i += 1;
+                opts.until = parseTime(args[i]);
+            } else {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
+        return opts;
+    }
+
+    /** Return the non-negative count S. */
+    private static int parseCount(String s) {
+        try {
+            int n = Integer.parseInt(s);
+            if (n < 0) {
+                throw new GitletException("Incorrect operands.");
+            }
+            return n;
+        } catch (NumberFormatException excp) {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Return the time S, given as a local date or date and time. */
+    private static Instant parseTime(String s) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            if (s.indexOf('T') >= 0) {
+                return LocalDateTime.parse(s).atZone(zone).toInstant();
+            }
+            return LocalDate.parse(s).atStartOfDay(zone).toInstant();
+        } catch (DateTimeParseException excp) {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Return true iff a commit made at TIME is too new to show. */
+    boolean tooNew(Instant time) {
+        return until != null && time.isAfter(until);
+    }
+
+    /** Return true iff a commit made at TIME is too old to show. */
+    boolean tooOld(Instant time) {
+        return since != null && time.isBefore(since);
+    }
+
+    /** Maximum number of commits shown. */
+    int limit = Integer.MAX_VALUE;
+    /** Earliest commit time shown, or null. */
+    Instant since;
+    /** Latest commit time shown, or null. */
+    Instant until;
+    /** Paths, relative to the working folder, of which only commits
+     *  changing one are shown; if empty, commits are shown whatever they
+     *  change. */
+    List<String> paths = new ArrayList<String>();
+    /** True iff each commit is shown on a single line. */
+    boolean oneline;
+}
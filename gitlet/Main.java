@@ -1,6 +1,11 @@
 package gitlet;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -10,31 +15,62 @@ import java.util.regex.Pattern;
  */
 public class Main extends Utils {
 
+    /** Commands that only read the repository, and so may run while
+     *  other such commands do. */
+    private static final Set<String> READ_ONLY = new HashSet<String>(
+        Arrays.asList("log", "global-log", "find", "status", "diff",
+                "fsck", "blame"));
+
     /** Store repo. */
     private static Repo repo;
+    /** Store the command run, once known. */
+    private static String commandName;
+    /** Store the time the process started, in nanoseconds. */
+    private static long startTime;
     /** Store object dir. */
     private static File objectDir;
     /** Store working dir. */
     private static File workingDir;
+    /** Store the lock on the repository. */
+    private static RepoLock repoLock;
+    /** Age in milliseconds an unreachable object must reach before gc
+     *  removes it, unless told otherwise. */
+    private static final long DEFAULT_GC_GRACE = TimeUnit.DAYS.toMillis(14);
+    /** Longest wait in milliseconds for the working folder to change
+     *  before status --watch checks whether the repository has. */
+    private static final long WATCH_POLL = 500;
 
     /** Main function input ARGS. */
     public static void main(String... args) {
+        startTime = System.nanoTime();
+        Metrics.start();
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            exit();
         }
         String command = args[0];
+        commandName = command;
         workingDir = new File(".");
         objectDir = join(workingDir, ".gitlet");
         if (command.equals("init")) {
             commandInit(args);
+        } else if (command.equals("clone")) {
+            commandClone(args);
         }
         if (!join(objectDir, "GITLET").exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            exit();
+        }
+        try {
+            repoLock = RepoLock.acquire(objectDir,
+                    READ_ONLY.contains(command));
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            exit();
         }
         repo = readObject(join(objectDir, "GITLET"), Repo.class);
         runMain(command, args);
+        exit();
     }
 
     /** Runs Main.
@@ -42,19 +78,19 @@ public class Main extends Utils {
     private static void runMain(String command, String... args) {
         try {
             if (command.equals("add-remote")) {
-                commandAddRemote(args); System.exit(0);
+                commandAddRemote(args); exit();
             } else if (command.equals("push")) {
-                commandPush(args); System.exit(0);
+                commandPush(args); exit();
             } else if (command.equals("pull")) {
-                commandPull(args); System.exit(0);
+                commandPull(args); exit();
             } else if (command.equals("fetch")) {
-                commandFetch(args); System.exit(0);
+                commandFetch(args); exit();
             } else if (command.equals("rm-remote")) {
-                commandReRemote(args); System.exit(0);
+                commandReRemote(args); exit();
             }
         } catch (GitletException e) {
             System.out.println(e.getMessage());
-            System.exit(0);
+            exit();
         }
         if (command.equals("add")) {
             commandAdd(args);
@@ -80,47 +116,105 @@ public class Main extends Utils {
             commandMerge(args);
         } else if (command.equals("checkout")) {
             commandCheckout(args);
+        } else if (command.equals("diff")) {
+            commandDiff(args);
+        } else if (command.equals("gc")) {
+            commandGc(args);
+        } else if (command.equals("fsck")) {
+            commandFsck(args);
+        } else if (command.equals("blame")) {
+            commandBlame(args);
+        } else if (command.equals("sparse-checkout")) {
+            commandSparseCheckout(args);
         } else {
             System.out.println("No command with that name exists.");
-            System.exit(0);
+            exit();
         }
     }
 
+    /** End the process, first counting the run of the command and
+     *  saving the metrics. */
+    private static void exit() {
+        if (commandName != null) {
+            Metrics.command(commandName, System.nanoTime() - startTime);
+        }
+        Metrics.save();
+        System.exit(0);
+    }
+
+    /** Durably save the repository state, after every object written by
+     *  this command. */
+    private static void saveRepo() {
+        WriteBatch.commitState(join(objectDir, "GITLET"), repo);
+    }
+
     /** Performs init command.
      *  It takes in one or more Strings ARGS*/
     private static void commandInit(String... args) {
         if (join(objectDir, "GITLET").exists()) {
             System.out.println("A Gitlet version-control system"
                     + " already exists in the current directory.");
-            System.exit(0);
+            exit();
         } else {
             objectDir.mkdir();
+            RepoLock.acquire(objectDir, false);
             repo = new Repo();
-            writeObject(join(objectDir, "GITLET"), repo);
-            System.exit(0);
+            saveRepo();
+            exit();
         }
     }
 
+    /** Performs clone command.
+     *  It takes in one or more Strings ARGS: the path of a repository,
+     *  or of its .gitlet folder, to copy into the current directory. */
+    private static void commandClone(String... args) {
+        if (args.length != 2) {
+            System.out.println("Incorrect operands.");
+            exit();
+        } else if (join(objectDir, "GITLET").exists()) {
+            System.out.println("A Gitlet version-control system"
+                    + " already exists in the current directory.");
+            exit();
+        }
+        File remote = new File(args[1]);
+        if (!join(remote, "GITLET").isFile()) {
+            remote = join(remote, ".gitlet");
+        }
+        if (!join(remote, "GITLET").isFile()) {
+            System.out.println("Remote directory not found.");
+            exit();
+        }
+        objectDir.mkdir();
+        try {
+            RepoLock.acquire(objectDir, false);
+            RepoLock.acquire(remote, true);
+            repo = new Repo(remote);
+            saveRepo();
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            for (File f : objectDir.listFiles()) {
+                f.delete();
+            }
+            objectDir.delete();
+        }
+        exit();
+    }
+
     /** Performs add command.
      *  It takes in one or more Strings ARGS*/
     /** INPUT ARGS. */
     private static void commandAdd(String... args) {
-        if (args.length != 2) {
+        if (args.length < 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
         }
-        if (!join(workingDir, args[1]).exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
-        } else {
-            try {
-                repo.addFile(args[1]);
-                writeObject(join(objectDir, "GITLET"), repo);
-            } catch (GitletException e) {
-                System.out.println(e.getMessage());
-            }
-            System.exit(0);
+        try {
+            repo.addFiles(Arrays.asList(args).subList(1, args.length));
+            saveRepo();
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
         }
+        exit();
     }
 
     /** Performs commit command.
@@ -128,19 +222,19 @@ public class Main extends Utils {
     private static void commandCommit(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
         }
         try {
             if (args[1].length() == 0) {
                 System.out.println("Please enter a commit message.");
-                System.exit(0);
+                exit();
             }
             repo.newCommit(args[1]);
-            writeObject(join(objectDir, "GITLET"), repo);
+            saveRepo();
         } catch (GitletException e) {
             System.out.println(e.getMessage());
         }
-        System.exit(0);
+        exit();
     }
 
     /** Performs rm command.
@@ -148,39 +242,37 @@ public class Main extends Utils {
     private static void commandRm(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
         }
         try {
             repo.removeFile(args[1]);
-            writeObject(join(objectDir, "GITLET"), repo);
+            saveRepo();
         } catch (GitletException e) {
             System.out.println(e.getMessage());
         }
-        System.exit(0);
+        exit();
     }
 
     /** Performs log command.
      *  It takes in one or more Strings ARGS*/
     private static void commandLog(String... args) {
-        if (args.length != 1) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
-        } else {
-            repo.printLog();
-            System.exit(0);
+        try {
+            repo.printLog(LogOptions.parse(args, 1));
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
         }
+        exit();
     }
 
     /** Performs global-log command.
      *  It takes in one or more Strings ARGS*/
     private static void commandGlobalLog(String... args) {
-        if (args.length != 1) {
-            System.out.println("Incorrect operands:");
-            System.exit(0);
-        } else {
-            repo.printGlobalLog();
-            System.exit(0);
+        try {
+            repo.printGlobalLog(LogOptions.parse(args, 1));
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
         }
+        exit();
     }
 
     /** Performs find command.
@@ -188,25 +280,59 @@ public class Main extends Utils {
     private static void commandFind(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands:");
-            System.exit(0);
+            exit();
         }
         try {
             repo.doFind(args[1]);
         } catch (GitletException e) {
             System.out.println(e.getMessage());
         }
-        System.exit(0);
+        exit();
     }
 
     /** Performs status command.
      *  It takes in one or more Strings ARGS*/
     private static void commandStatus(String... args) {
-        if (args.length != 1) {
+        if (args.length == 2 && args[1].equals("--watch")) {
+            watchStatus();
+        } else if (args.length != 1) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
         } else {
             repo.printStatus();
-            System.exit(0);
+            exit();
+        }
+    }
+
+    /** Print the status, and print it again whenever the working folder
+     *  or the repository changes, until the process is killed. The
+     *  working folder is watched, so after the first status only the
+     *  files that changed are looked at. The repository is locked only
+     *  while it is read. */
+    private static void watchStatus() {
+        File state = join(objectDir, "GITLET");
+        long stamp = state.lastModified();
+        repo.watchWorkingFolder();
+        try {
+            while (true) {
+                repo.printStatus();
+                repoLock.release();
+                while (!repo.awaitWorkingFolder(WATCH_POLL)
+                       && state.lastModified() == stamp) {
+                    continue;
+                }
+                System.out.println();
+                repoLock = RepoLock.acquire(objectDir, true);
+                if (state.lastModified() != stamp) {
+                    stamp = state.lastModified();
+                    Repo fresh = readObject(state, Repo.class);
+                    fresh.keepWatch(repo);
+                    repo = fresh;
+                }
+            }
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            exit();
         }
     }
 
@@ -216,66 +342,164 @@ public class Main extends Utils {
         if (args[1].equals("--")) {
             if (args.length != 3) {
                 System.out.println("Incorrect operands.");
-                System.exit(0);
+                exit();
             } else {
                 try {
                     repo.revertFile(args[2]);
-                    writeObject(join(objectDir, "GITLET"), repo);
+                    saveRepo();
                 } catch (GitletException e) {
                     System.out.println(e.getMessage());
                 }
-                System.exit(0);
+                exit();
             }
         } else {
             Pattern p = Pattern.compile("[a-f0-9]+");
-            File file = join(objectDir, "GITLET");
             if (args.length == 2) {
                 try {
                     repo.checkout2branch(args[1]);
-                    writeObject(file, repo);
+                    saveRepo();
                 } catch (GitletException e) {
                     System.out.println(e.getMessage());
                 }
-                System.exit(0);
+                exit();
             } else {
                 if (args.length != 4) {
                     System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    exit();
                 }
                 if (!args[2].equals("--")) {
                     System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    exit();
                 }
                 if (!Pattern.matches("[a-f0-9]+", args[1])) {
                     System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    exit();
                 }
                 try {
                     String id = repo.convertID(args[1]);
                     repo.revertFile(id, args[3]);
-                    writeObject(file, repo);
+                    saveRepo();
                 } catch (GitletException e) {
                     System.out.println(e.getMessage());
                 }
-                System.exit(0);
+                exit();
             }
         }
     }
 
-    /** Performs branch command.
+    /** Performs diff command.
      *  It takes in one or more Strings ARGS*/
-    private static void commandBranch(String... args) {
-        if (args.length != 2) {
+    private static void commandDiff(String... args) {
+        boolean cached = args.length > 1 && args[1].equals("--cached");
+        int first = cached ? 2 : 1;
+        if (args.length - first > 2 || (cached && args.length - first > 1)) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
+        }
+        String[] ids = new String[args.length - first];
+        for (int i = 0; i < ids.length; i += 1) {
+            if (!Pattern.matches("[a-f0-9]+", args[first + i])) {
+                System.out.println("Incorrect operands.");
+                exit();
+            }
+            ids[i] = repo.convertID(args[first + i]);
         }
         try {
-            repo.createBranch(args[1]);
-            writeObject(join(objectDir, "GITLET"), repo);
+            if (cached) {
+                repo.diffStaged(ids.length == 0 ? null : ids[0]);
+            } else if (ids.length == 2) {
+                repo.diffCommits(ids[0], ids[1]);
+            } else {
+                repo.diffWorking(ids.length == 0 ? null : ids[0]);
+            }
         } catch (GitletException e) {
             System.out.println(e.getMessage());
         }
-        System.exit(0);
+        exit();
+    }
+
+    /** Performs gc command.
+     *  It takes in one or more Strings ARGS*/
+    private static void commandGc(String... args) {
+        long grace = DEFAULT_GC_GRACE;
+        if (args.length > 2
+                || (args.length == 2 && !args[1].startsWith("--prune="))) {
+            System.out.println("Incorrect operands.");
+            exit();
+        } else if (args.length == 2) {
+            String when = args[1].substring("--prune=".length());
+            if (when.equals("now")) {
+                grace = 0;
+            } else if (Pattern.matches("[0-9]+", when)) {
+                grace = TimeUnit.DAYS.toMillis(Long.parseLong(when));
+            } else {
+                System.out.println("Incorrect operands.");
+                exit();
+            }
+        }
+        repo.gc(grace);
+        saveRepo();
+        exit();
+    }
+
+    /** Performs fsck command.
+     *  It takes in one or more Strings ARGS*/
+    private static void commandFsck(String... args) {
+        if (args.length > 2
+                || (args.length == 2 && !args[1].equals("--quick"))) {
+            System.out.println("Incorrect operands.");
+            exit();
+        }
+        repo.fsck(args.length == 2);
+        exit();
+    }
+
+    /** Performs blame command.
+     *  It takes in one or more Strings ARGS*/
+    private static void commandBlame(String... args) {
+        if (args.length < 2 || args.length > 3
+                || (args.length == 3
+                    && !Pattern.matches("[a-f0-9]+", args[1]))) {
+            System.out.println("Incorrect operands.");
+            exit();
+        }
+        try {
+            repo.blame(args.length == 3 ? repo.convertID(args[1]) : null,
+                    args[args.length - 1]);
+            WriteBatch.flush();
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+        }
+        exit();
+    }
+
+    /** Performs branch command.
+     *  It takes in one or more Strings ARGS: a new branch's name; -v to
+     *  list the branches; --set-upstream-to, an upstream and optionally
+     *  a branch; or --unset-upstream and optionally a branch. */
+    private static void commandBranch(String... args) {
+        int n = args.length;
+        String flag = n > 1 ? args[1] : "";
+        try {
+            if (n == 2 && flag.equals("-v")) {
+                repo.printBranches();
+                exit();
+            } else if ((n == 3 || n == 4)
+                    && flag.equals("--set-upstream-to")) {
+                repo.setUpstream(n == 4 ? args[3] : null, args[2]);
+            } else if ((n == 2 || n == 3) && flag.equals("--unset-upstream")) {
+                repo.setUpstream(n == 3 ? args[2] : null, null);
+            } else if (n == 2) {
+                repo.createBranch(flag);
+            } else {
+                System.out.println("Incorrect operands.");
+                exit();
+            }
+            saveRepo();
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+        }
+        exit();
     }
 
     /** Performs rm-branch command.
@@ -283,15 +507,15 @@ public class Main extends Utils {
     private static void commandRmBranch(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
         }
         try {
             repo.removeBranch(args[1]);
-            writeObject(join(objectDir, "GITLET"), repo);
+            saveRepo();
         } catch (GitletException e) {
             System.out.println(e.getMessage());
         }
-        System.exit(0);
+        exit();
     }
 
     /** Performs reset command.
@@ -299,66 +523,117 @@ public class Main extends Utils {
     private static void commandReset(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
         }
         try {
             String id = repo.convertID(args[1]);
             repo.revertWorkingFolder(id);
-            writeObject(join(objectDir, "GITLET"), repo);
+            saveRepo();
         } catch (GitletException e) {
             System.out.println(e.getMessage());
         }
-        System.exit(0);
+        exit();
     }
 
     /** Performs merge command.
-     *  It takes in one or more Strings ARGS*/
+     *  It takes in one or more Strings ARGS: the branches to merge. */
     private static void commandMerge(String... args) {
-        if (args.length != 2) {
+        if (args.length < 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit();
         }
         try {
-            repo.merge(args[1]);
-            writeObject(join(objectDir, "GITLET"), repo);
+            repo.merge(Arrays.asList(args).subList(1, args.length));
+            saveRepo();
         } catch (GitletException e) {
             System.out.println(e.getMessage());
         }
-        System.exit(0);
+        exit();
+    }
+
+    /** Performs sparse-checkout command.
+     *  It takes in one or more Strings ARGS: set and the folders to
+     *  check out, list, or disable. */
+    private static void commandSparseCheckout(String... args) {
+        String sub = args.length > 1 ? args[1] : "";
+        try {
+            if (sub.equals("set") && args.length > 2) {
+                repo.setSparse(Arrays.asList(args).subList(2, args.length));
+            } else if (sub.equals("disable") && args.length == 2) {
+                repo.setSparse(null);
+            } else if (sub.equals("list") && args.length == 2) {
+                repo.printSparse();
+                exit();
+            } else {
+                System.out.println("Incorrect operands.");
+                exit();
+            }
+            saveRepo();
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+        }
+        exit();
     }
 
     /** Performs add-remote command.
      *  It takes in one or more Strings ARGS*/
     private static void commandAddRemote(String... args) {
         repo.addRemote(args[1], new File(args[2]));
-        writeObject(join(objectDir, "GITLET"), repo);
+        saveRepo();
     }
 
     /** Performs fetch command.
-     *  It takes in one or more Strings ARGS*/
+     *  It takes in one or more Strings ARGS: a remote name and a branch,
+     *  with --depth N anywhere to fetch only the newest N levels and
+     *  --filter=blob:none to leave blobs on the remote until needed. */
     private static void commandFetch(String... args) {
-        repo.fetchBranch(args[1], args[2]);
-        writeObject(join(objectDir, "GITLET"), repo);
+        int depth = Integer.MAX_VALUE;
+        boolean blobs = true;
+        ArrayList<String> names = new ArrayList<String>();
+        for (int i = 1; i < args.length; i += 1) {
+            String depthArg = null;
+            if (args[i].equals("--filter=blob:none")) {
+                blobs = false;
+                continue;
+            } else if (args[i].equals("--depth") && i + 1 < args.length) {
+                i += 1;
+                depthArg = args[i];
+            } else if (args[i].startsWith("--depth=")) {
+                depthArg = args[i].substring("--depth=".length());
+            } else {
+                names.add(args[i]);
+                continue;
+            }
+            if (!Pattern.matches("[1-9][0-9]{0,8}", depthArg)) {
+                throw new GitletException("Incorrect operands.");
+            }
+            depth = Integer.parseInt(depthArg);
+        }
+        if (names.size() != 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        repo.fetchBranch(names.get(0), names.get(1), depth, blobs);
+        saveRepo();
     }
 
     /** Performs pull command.
      *  It takes in one or more Strings ARGS*/
     private static void commandPull(String... args) {
         repo.pull(args[1], args[2]);
-        writeObject(join(objectDir, "GITLET"), repo);
+        saveRepo();
     }
 
     /** Performs push command.
      *  It takes in one or more Strings ARGS*/
     private static void commandPush(String... args) {
         repo.push(args[1], args[2]);
-        writeObject(join(objectDir, "GITLET"), repo);
+        saveRepo();
     }
 
     /** Performs rm-remote command.
      *  It takes in one or more Strings ARGS*/
     private static void commandReRemote(String... args) {
         repo.removeRemote(args[1]);
-        writeObject(join(objectDir, "GITLET"), repo);
+        saveRepo();
     }
 }
@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The contents of a file, memory-mapped and split into lines.
+ * Lines keep their terminating newline, so that a file can be
+ * reproduced exactly by writing out all of its lines in order.
+ *  @author Tiffany Kim */
+
+class MappedLines {
+
+    /** An empty sequence of lines. */
+    MappedLines() {
+        this(ByteBuffer.allocate(0));
+    }
+
+    /** Lines of the bytes in BUF. */
+    MappedLines(ByteBuffer buf) {
+        _buf = buf;
+        int[] starts = new int[INITIAL_LINES + 1];
+        int[] hashes = new int[INITIAL_LINES];
+        int n = 0;
+        int start = 0;
+        int hash = 0;
+        int limit = buf.limit();
+        for (int i = 0; i < limit; i += 1) {
+            byte b = buf.get(i);
+            hash = HASH_MULTIPLIER * hash + b;
+            if (b == '\n' || i == limit - 1) {
+                if (n == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, 2 * n);
+                    starts = Arrays.copyOf(starts, 2 * n + 1);
+                }
+                starts[n] = start;
+                hashes[n] = hash;
+                n += 1;
+                start = i + 1;
+                hash = 0;
+            }
+        }
+        starts[n] = limit;
+        _starts = starts;
+        _hashes = hashes;
+        _size = n;
+    }
+
+    /** Return the lines of FILE, which is mapped rather than read.
+     *  A FILE that does not exist has no lines. */
+    static MappedLines map(File file) {
+        if (file == null || !file.isFile()) {
+            return new MappedLines();
+        }
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long len = ch.size();
+            if (len > Integer.MAX_VALUE) {
+                throw new GitletException("File too large to compare.");
+            }
+            MappedByteBuffer buf =
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, len);
+            return new MappedLines(buf);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the number of lines. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the length in bytes of line I, including its newline. */
+    int length(int i) {
+        return _starts[i + 1] - _starts[i];
+    }
+
+    /** Return true iff line I ends with a newline. */
+    boolean terminated(int i) {
+        return _buf.get(_starts[i + 1] - 1) == '\n';
+    }
+
+    /** Return true iff line I of this equals line J of OTHER. */
+    boolean same(int i, MappedLines other, int j) {
+        if (_hashes[i] != other._hashes[j]) {
+            return false;
+        }
+        int len = length(i);
+        if (len != other.length(j)) {
+            return false;
+        }
+        int p = _starts[i], q = other._starts[j];
+        for (int k = 0; k < len; k += 1) {
+            if (_buf.get(p + k) != other._buf.get(q + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write line I, newline included, to OUT. */
+    void write(int i, OutputStream out) throws IOException {
+        int p = _starts[i], end = _starts[i + 1];
+        while (p < end) {
+            int n = Math.min(COPY_SIZE, end - p);
+            for (int k = 0; k < n; k += 1) {
+                _copy[k] = _buf.get(p + k);
+            }
+            out.write(_copy, 0, n);
+            p += n;
+        }
+    }
+
+    /** Write lines FROM (inclusive) to TO (exclusive) to OUT. */
+    void write(int from, int to, OutputStream out) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            write(i, out);
+        }
+    }
+
+    /** Lines expected in a typical file. */
+    private static final int INITIAL_LINES = 64;
+    /** Multiplier for the rolling line hash. */
+    private static final int HASH_MULTIPLIER = 31;
+    /** Size of the copy buffer used when writing lines. */
+    private static final int COPY_SIZE = 8192;
+
+    /** The mapped contents. */
+    private final ByteBuffer _buf;
+    /** Start offset of each line, plus the end of the last line. */
+    private final int[] _starts;
+    /** Hash of each line. */
+    private final int[] _hashes;
+    /** Number of lines. */
+    private final int _size;
+    /** Scratch buffer for copying lines out of _buf. */
+    private final byte[] _copy = new byte[COPY_SIZE];
+}
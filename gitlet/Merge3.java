@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A diff3-style line merge of two versions of a file against the
+ * version at their split point. Changes that do not overlap are merged
+ * automatically; only overlapping changes become conflict blocks.
+ *  @author Tiffany Kim */
+
+class Merge3 {
+
+    /** A merge of OURS and THEIRS, both descended from BASE, written
+     *  to OUT. */
+    private Merge3(MappedLines base, MappedLines ours, MappedLines theirs,
+                   OutputStream out) {
+        _base = base;
+        _ours = ours;
+        _theirs = theirs;
+        _out = out;
+    }
+
+    /** Write the merge of OURS and THEIRS, both descended from BASE,
+     *  to OUT. Return true iff the result contains a conflict. */
+    static boolean merge(MappedLines base, MappedLines ours,
+                         MappedLines theirs, OutputStream out)
+        throws IOException {
+        Merge3 m = new Merge3(base, ours, theirs, out);
+        m.run(Diff.edits(base, ours), Diff.edits(base, theirs));
+        return m._conflict;
+    }
+
+    /** Merge the edits OURS and THEIRS to the base file. */
+    private void run(List<Diff.Edit> ours, List<Diff.Edit> theirs)
+        throws IOException {
+        int i = 0, j = 0;
+        int pos = 0;
+        int oursShift = 0, theirsShift = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            boolean oursFirst = j == theirs.size()
+                || (i < ours.size()
+                    && ours.get(i).aStart <= theirs.get(j).aStart);
+            int i0 = i, j0 = j;
+            int lo, hi;
+            if (oursFirst) {
+                lo = ours.get(i).aStart;
+                hi = ours.get(i).aEnd;
+                i += 1;
+            } else {
+                lo = theirs.get(j).aStart;
+                hi = theirs.get(j).aEnd;
+                j += 1;
+            }
+            while (true) {
+                if (i < ours.size() && ours.get(i).aStart <= hi) {
+                    hi = Math.max(hi, ours.get(i).aEnd);
+                    i += 1;
+                } else if (j < theirs.size() && theirs.get(j).aStart <= hi) {
+                    hi = Math.max(hi, theirs.get(j).aEnd);
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            copy(_base, pos, lo);
+            int oursDelta = delta(ours, i0, i);
+            int theirsDelta = delta(theirs, j0, j);
+            int oLo = lo + oursShift, oHi = hi + oursShift + oursDelta;
+            int tLo = lo + theirsShift, tHi = hi + theirsShift + theirsDelta;
+            if (j == j0) {
+                copy(_ours, oLo, oHi);
+            } else if (i == i0 || same(oLo, oHi, tLo, tHi)) {
+                copy(_theirs, tLo, tHi);
+            } else {
+                _conflict = true;
+                write(OURS_MARKER);
+                copy(_ours, oLo, oHi);
+                write(SEPARATOR);
+                copy(_theirs, tLo, tHi);
+                write(THEIRS_MARKER);
+            }
+            oursShift += oursDelta;
+            theirsShift += theirsDelta;
+            pos = hi;
+        }
+        copy(_base, pos, _base.size());
+    }
+
+    /** Return the change in line count made by EDITS FROM..TO. */
+    private static int delta(List<Diff.Edit> edits, int from, int to) {
+        int d = 0;
+        for (int k = from; k < to; k += 1) {
+            Diff.Edit e = edits.get(k);
+            d += (e.bEnd - e.bStart) - (e.aEnd - e.aStart);
+        }
+        return d;
+    }
+
+    /** Return true iff lines OLO..OHI of ours equal lines TLO..THI of
+     *  theirs. */
+    private boolean same(int oLo, int oHi, int tLo, int tHi) {
+        if (oHi - oLo != tHi - tLo) {
+            return false;
+        }
+        for (int k = 0; k < oHi - oLo; k += 1) {
+            if (!_ours.same(oLo + k, _theirs, tLo + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Copy lines FROM..TO of LINES to the output. */
+    private void copy(MappedLines lines, int from, int to)
+        throws IOException {
+        lines.write(from, to, _out);
+        _terminated = from == to ? _terminated : lines.terminated(to - 1);
+    }
+
+    /** Write conflict MARKER on a line of its own. */
+    private void write(byte[] marker) throws IOException {
+        if (!_terminated) {
+            _out.write('\n');
+        }
+        _out.write(marker);
+        _terminated = true;
+    }
+
+    /** Start of the current branch's side of a conflict. */
+    private static final byte[] OURS_MARKER =
+        "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    /** Separator between the two sides of a conflict. */
+    private static final byte[] SEPARATOR =
+        "=======\n".getBytes(StandardCharsets.UTF_8);
+    /** End of the given branch's side of a conflict. */
+    private static final byte[] THEIRS_MARKER =
+        ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Version at the split point. */
+    private final MappedLines _base;
+    /** Version in the current branch. */
+    private final MappedLines _ours;
+    /** Version in the given branch. */
+    private final MappedLines _theirs;
+    /** Destination of the merged file. */
+    private final OutputStream _out;
+    /** True iff the output so far ends with a newline. */
+    private boolean _terminated = true;
+    /** True iff a conflict has been written. */
+    private boolean _conflict;
+}
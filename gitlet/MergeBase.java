@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Best common ancestors of commits, found over every parent of every
+ * commit using only the commit index. Commits are visited newest first
+ * from a priority queue, each marked with the sides it is reachable
+ * from. A commit reached from both sides is a candidate, and its
+ * ancestors are marked stale. The walk stops once only stale commits
+ * are left, so it never goes much further back than the answer.
+ * Candidates that are ancestors of other candidates are then dropped,
+ * leaving the best common ancestors. After a criss-cross merge there
+ * can be more than one. History is cut off at shallow commits.
+ *  @author Tiffany Kim */
+
+class MergeBase {
+
+    /** A search over the commits of INDEX, treating those in SHALLOW as
+     *  having no parents. */
+    MergeBase(CommitIndex index, Set<String> shallow) {
+        _index = index;
+        _shallow = shallow;
+    }
+
+    /** Return the best common ancestors of commit ONE and any of the
+     *  commits TWOS, newest first. */
+    List<String> bases(String one, Collection<String> twos) {
+        Walk walk = new Walk();
+        walk.mark(one, ONE);
+        for (String two : twos) {
+            walk.mark(two, TWO);
+        }
+        ArrayList<String> candidates = new ArrayList<String>();
+        while (walk._live > 0) {
+            CommitInfo c = walk.poll();
+            int f = walk._flags.get(c.getHash());
+            int sides = f & (ONE | TWO | STALE);
+            if ((f & (ONE | TWO | STALE | RESULT)) == (ONE | TWO)) {
+                walk._flags.put(c.getHash(), f | RESULT);
+                candidates.add(c.getHash());
+                sides |= STALE;
+            }
+            for (String p : parents(c)) {
+                walk.mark(p, sides);
+            }
+        }
+        candidates.removeIf(h -> (walk._flags.get(h) & STALE) != 0);
+        return removeRedundant(candidates);
+    }
+
+    /** Return true iff commit ANCESTOR is reachable from commit C. */
+    boolean isAncestor(String ancestor, String c) {
+        return ancestor.equals(c) || bases(ancestor, List.of(c))
+            .contains(ancestor);
+    }
+
+    /** The state of one search: the flags of the commits reached, and
+     *  the commits waiting to be visited, newest first. A commit may
+     *  wait more than once, when it is reached again with new flags.
+     *  The number of waiting entries whose commits are not STALE is
+     *  kept as flags change, so the search knows when to stop without
+     *  looking through the queue. */
+    private class Walk {
+
+        /** Add FLAG to the flags of commit HASH, queueing it unless it
+         *  already had them all. */
+        void mark(String hash, int flag) {
+            CommitInfo c = _index.get(hash);
+            int old = _flags.getOrDefault(hash, 0);
+            if (c == null || (old & flag) == flag) {
+                return;
+            }
+            _flags.put(hash, old | flag);
+            int waiting = _waiting.getOrDefault(hash, 0);
+            if ((old & STALE) == 0 && (flag & STALE) != 0) {
+                _live -= waiting;
+            }
+            _waiting.put(hash, waiting + 1);
+            if ((flag & STALE) == 0 && (old & STALE) == 0) {
+                _live += 1;
+            }
+            _queue.add(c);
+        }
+
+        /** Remove and return the newest waiting commit. */
+        CommitInfo poll() {
+            CommitInfo c = _queue.poll();
+            _waiting.merge(c.getHash(), -1, Integer::sum);
+            if ((_flags.get(c.getHash()) & STALE) == 0) {
+                _live -= 1;
+            }
+            return c;
+        }
+
+        /** Flags of the commits reached, by hash. */
+        private final HashMap<String, Integer> _flags =
+            new HashMap<String, Integer>();
+        /** Commits waiting to be visited. */
+        private final PriorityQueue<CommitInfo> _queue =
+            new PriorityQueue<CommitInfo>(NEWEST_FIRST);
+        /** Number of times each commit is waiting, by hash. */
+        private final HashMap<String, Integer> _waiting =
+            new HashMap<String, Integer>();
+        /** Number of waiting entries whose commits are not STALE. */
+        private int _live;
+    }
+
+    /** Return the parents of C that are followed. */
+    private String[] parents(CommitInfo c) {
+        return _shallow.contains(c.getHash()) ? new String[0]
+            : c.getParents();
+    }
+
+    /** Return CANDIDATES without those reachable from another of them,
+     *  in the same order. The walk looking for a candidate does not go
+     *  past commits older than it, which cannot have it as an
+     *  ancestor. */
+    private List<String> removeRedundant(List<String> candidates) {
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+        ArrayList<String> result = new ArrayList<String>();
+        for (String c : candidates) {
+            Instant oldest = _index.get(c).getTime();
+            HashSet<String> seen = new HashSet<String>();
+            ArrayDeque<String> work = new ArrayDeque<String>();
+            for (String other : candidates) {
+                if (!other.equals(c)) {
+                    work.push(other);
+                }
+            }
+            boolean redundant = false;
+            while (!work.isEmpty() && !redundant) {
+                CommitInfo info = _index.get(work.pop());
+                if (info == null || !seen.add(info.getHash())
+                        || info.getTime().isBefore(oldest)) {
+                    continue;
+                }
+                for (String p : parents(info)) {
+                    redundant |= p.equals(c);
+                    work.push(p);
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /** Orders commits from newest to oldest. */
+    private static final Comparator<CommitInfo> NEWEST_FIRST =
+        (a, b) -> b.getTime().compareTo(a.getTime());
+
+    /** Flag of commits reachable from the first commit. */
+    private static final int ONE = 1;
+    /** Flag of commits reachable from the other commits. */
+    private static final int TWO = 2;
+    /** Flag of commits below a common ancestor already found. */
+    private static final int STALE = 4;
+    /** Flag of commits found to be common ancestors. */
+    private static final int RESULT = 8;
+
+    /** Index of the commits. */
+    private final CommitIndex _index;
+    /** Commits whose parents are not held. */
+    private final Set<String> _shallow;
+}
@@ -0,0 +1,425 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of what gitlet does, for programs that run it for long: how
+ * often each command runs and how long it takes, how often the commit
+ * cache answers, the objects read and written, the bytes fetch and push
+ * copy, and the time spent waiting for locks. Counting is a LongAdder
+ * increment, cheap enough for the paths that read and write objects.
+ *
+ * Nothing is published unless asked for. With the system property
+ * gitlet.jmx set to true, the counters are a JMX MXBean, counting this
+ * process only. With gitlet.metricsFile naming a file, they are added to
+ * it in the Prometheus text format every gitlet.metricsInterval seconds
+ * and whenever save is called, as Main does when a command finishes.
+ * The file holds totals over every process that writes it: each write
+ * reads the file, adds what this process counted since its last write,
+ * and replaces the file atomically, so a collector never reads half a
+ * file. Writers take turns through a lock on a sibling file whose name
+ * ends in ".lock". Deleting the file starts the totals again.
+ *  @author Tiffany Kim */
+
+class Metrics implements MetricsMXBean {
+
+    /** Start publishing the counters as the system properties ask.
+     *  Calls after the first do nothing. */
+    static synchronized void start() {
+        boolean jmx = Boolean.getBoolean("gitlet.jmx");
+        if (_started || (!jmx && file() == null)) {
+            return;
+        }
+        _started = true;
+        if (jmx) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new Metrics(), new ObjectName(OBJECT_NAME));
+            } catch (JMException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (file() != null) {
+            long period = Long.getLong("gitlet.metricsInterval",
+                                       DEFAULT_INTERVAL);
+            ScheduledExecutorService timer =
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "gitlet-metrics");
+                    t.setDaemon(true);
+                    return t;
+                });
+            timer.scheduleAtFixedRate(Metrics::save, period, period,
+                                      TimeUnit.SECONDS);
+        }
+    }
+
+    /** Add the counts made since the last save to the metrics file, if
+     *  one is configured. Failures are ignored; the next save adds the
+     *  counts instead. */
+    static synchronized void save() {
+        File file = file();
+        if (file == null) {
+            return;
+        }
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        Path lockFile = target.resolveSibling(file.getName() + ".lock");
+        LinkedHashMap<String, Double> now = samples();
+        try (FileChannel ch = FileChannel.open(lockFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.lock();
+            try {
+                LinkedHashMap<String, Double> totals = read(target);
+                for (Map.Entry<String, Double> e : now.entrySet()) {
+                    double delta =
+                        e.getValue() - SAVED.getOrDefault(e.getKey(), 0.0);
+                    totals.merge(e.getKey(), delta, Double::sum);
+                }
+                Files.write(tmp,
+                        format(totals).getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+        SAVED.putAll(now);
+    }
+
+    /** Count a run of COMMAND that took NANOS nanoseconds. */
+    static void command(String command, long nanos) {
+        COMMANDS.computeIfAbsent(command, c -> new Histogram()).add(nanos);
+    }
+
+    /** Count a lookup of a commit, which was in the cache iff HIT. */
+    static void commitLookup(boolean hit) {
+        (hit ? CACHE_HITS : CACHE_MISSES).increment();
+    }
+
+    /** Count an object read. */
+    static void objectRead() {
+        OBJECTS_READ.increment();
+    }
+
+    /** Count an object written. */
+    static void objectWritten() {
+        OBJECTS_WRITTEN.increment();
+    }
+
+    /** Count BYTES of objects copied between repositories. */
+    static void transferred(long bytes) {
+        BYTES_TRANSFERRED.add(bytes);
+    }
+
+    /** Count a lock taken after waiting NANOS nanoseconds. */
+    static void lockTaken(long nanos) {
+        LOCKS.increment();
+        LOCK_WAIT.add(nanos);
+    }
+
+    /** Return the counters of this process in the Prometheus text
+     *  format. */
+    static String prometheus() {
+        return format(samples());
+    }
+
+    /** Return the samples of the counters of this process, by the name
+     *  and labels they are written under, in the order written. */
+    private static LinkedHashMap<String, Double> samples() {
+        LinkedHashMap<String, Double> result =
+            new LinkedHashMap<String, Double>();
+        for (Map.Entry<String, Histogram> e
+                 : new TreeMap<String, Histogram>(COMMANDS).entrySet()) {
+            e.getValue().samples(result, COMMAND_DURATION, e.getKey());
+        }
+        result.put("gitlet_commit_cache_hits_total",
+                   (double) CACHE_HITS.sum());
+        result.put("gitlet_commit_cache_misses_total",
+                   (double) CACHE_MISSES.sum());
+        result.put("gitlet_objects_read_total", (double) OBJECTS_READ.sum());
+        result.put("gitlet_objects_written_total",
+                   (double) OBJECTS_WRITTEN.sum());
+        result.put("gitlet_transfer_bytes_total",
+                   (double) BYTES_TRANSFERRED.sum());
+        result.put("gitlet_lock_acquisitions_total", (double) LOCKS.sum());
+        result.put("gitlet_lock_wait_seconds_total",
+                   LOCK_WAIT.sum() / NANOS_PER_SECOND);
+        return result;
+    }
+
+    /** Return SAMPLES in the Prometheus text format, each metric under
+     *  its help and type lines. Samples of metrics not known here are
+     *  left out. */
+    private static String format(Map<String, Double> samples) {
+        StringBuilder out = new StringBuilder();
+        for (String[] metric : METRICS) {
+            boolean first = true;
+            for (Map.Entry<String, Double> e : samples.entrySet()) {
+                if (!metric[0].equals(metricOf(e.getKey()))) {
+                    continue;
+                } else if (first) {
+                    header(out, metric[0], metric[1], metric[2]);
+                    first = false;
+                }
+                out.append(e.getKey()).append(' ')
+                    .append(number(e.getValue())).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /** Return the samples in the Prometheus text file TARGET, in order,
+     *  or none if it cannot be read. Lines that are not samples are
+     *  skipped. */
+    private static LinkedHashMap<String, Double> read(Path target) {
+        LinkedHashMap<String, Double> result =
+            new LinkedHashMap<String, Double>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(target, StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            return result;
+        }
+        for (String line : lines) {
+            int space = line.lastIndexOf(' ');
+            if (line.startsWith("#") || space <= 0) {
+                continue;
+            }
+            try {
+                result.put(line.substring(0, space),
+                           Double.parseDouble(line.substring(space + 1)));
+            } catch (NumberFormatException excp) {
+                continue;
+            }
+        }
+        return result;
+    }
+
+    /** Return the name of the metric that sample SAMPLE, a name with
+     *  optional labels, belongs to. */
+    private static String metricOf(String sample) {
+        int brace = sample.indexOf('{');
+        String name = brace < 0 ? sample : sample.substring(0, brace);
+        for (String suffix : HISTOGRAM_SUFFIXES) {
+            if (name.equals(COMMAND_DURATION + suffix)) {
+                return COMMAND_DURATION;
+            }
+        }
+        return name;
+    }
+
+    /** Return VALUE in decimal, without a fraction if it is whole. */
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.9f", value);
+    }
+
+    /** Return the metrics file asked for, or null. */
+    private static File file() {
+        String name = System.getProperty("gitlet.metricsFile");
+        return name == null ? null : new File(name);
+    }
+
+    /** Append to OUT the help and type lines of metric NAME of type
+     *  TYPE described by HELP. */
+    private static void header(StringBuilder out, String name, String type,
+                               String help) {
+        out.append("# HELP ").append(name).append(' ').append(help)
+            .append("\n# TYPE ").append(name).append(' ').append(type)
+            .append('\n');
+    }
+
+    @Override
+    public long getCommitCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    @Override
+    public long getCommitCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    @Override
+    public double getCommitCacheHitRate() {
+        long hits = CACHE_HITS.sum(), all = hits + CACHE_MISSES.sum();
+        return all == 0 ? 0 : (double) hits / all;
+    }
+
+    @Override
+    public long getObjectsRead() {
+        return OBJECTS_READ.sum();
+    }
+
+    @Override
+    public long getObjectsWritten() {
+        return OBJECTS_WRITTEN.sum();
+    }
+
+    @Override
+    public long getBytesTransferred() {
+        return BYTES_TRANSFERRED.sum();
+    }
+
+    @Override
+    public long getLockAcquisitions() {
+        return LOCKS.sum();
+    }
+
+    @Override
+    public double getLockWaitSeconds() {
+        return LOCK_WAIT.sum() / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        COMMANDS.forEach((c, h) -> result.put(c, h._count.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getCommandMeanSeconds() {
+        TreeMap<String, Double> result = new TreeMap<String, Double>();
+        COMMANDS.forEach((c, h) -> {
+            long n = h._count.sum();
+            result.put(c, n == 0 ? 0 : h._nanos.sum() / NANOS_PER_SECOND / n);
+        });
+        return result;
+    }
+
+    /** Counts of the durations of one command, in fixed buckets. */
+    private static class Histogram {
+
+        /** Count a run that took NANOS nanoseconds. */
+        void add(long nanos) {
+            int i = 0;
+            while (i < BOUNDS.length && nanos > BOUNDS[i] * NANOS_PER_SECOND) {
+                i += 1;
+            }
+            _buckets[i].increment();
+            _count.increment();
+            _nanos.add(nanos);
+        }
+
+        /** Add to SAMPLES the samples of histogram NAME for command
+         *  COMMAND, with cumulative buckets as Prometheus expects. */
+        void samples(Map<String, Double> samples, String name,
+                     String command) {
+            String label = "{command=\"" + command + "\"";
+            long total = 0;
+            for (int i = 0; i <= BOUNDS.length; i += 1) {
+                total += _buckets[i].sum();
+                String le = i < BOUNDS.length
+                    ? Double.toString(BOUNDS[i]) : "+Inf";
+                samples.put(name + "_bucket" + label + ",le=\"" + le + "\"}",
+                            (double) total);
+            }
+            samples.put(name + "_sum" + label + "}",
+                        _nanos.sum() / NANOS_PER_SECOND);
+            samples.put(name + "_count" + label + "}",
+                        (double) _count.sum());
+        }
+
+        /** Runs in each bucket; the last holds those over every
+         *  bound. */
+        private final LongAdder[] _buckets = newAdders(BOUNDS.length + 1);
+        /** Runs counted. */
+        private final LongAdder _count = new LongAdder();
+        /** Total nanoseconds of the runs counted. */
+        private final LongAdder _nanos = new LongAdder();
+    }
+
+    /** Return N new adders. */
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] result = new LongAdder[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    /** Name of the histogram of command durations. */
+    private static final String COMMAND_DURATION =
+        "gitlet_command_duration_seconds";
+    /** Endings of the names of the samples of a histogram. */
+    private static final String[] HISTOGRAM_SUFFIXES = {
+        "_bucket", "_sum", "_count"
+    };
+    /** Name, type and help of each metric, in the order written. */
+    private static final String[][] METRICS = {
+        {COMMAND_DURATION, "histogram", "Time taken by each command."},
+        {"gitlet_commit_cache_hits_total", "counter",
+         "Commits found in the commit cache."},
+        {"gitlet_commit_cache_misses_total", "counter",
+         "Commits read because they were not cached."},
+        {"gitlet_objects_read_total", "counter",
+         "Objects read from the object folder."},
+        {"gitlet_objects_written_total", "counter",
+         "Objects written to an object folder."},
+        {"gitlet_transfer_bytes_total", "counter",
+         "Bytes of objects copied by fetch and push."},
+        {"gitlet_lock_acquisitions_total", "counter",
+         "Repository locks taken."},
+        {"gitlet_lock_wait_seconds_total", "counter",
+         "Time spent waiting for repository locks."},
+    };
+    /** Name under which the MXBean is registered. */
+    static final String OBJECT_NAME = "gitlet:type=Metrics";
+    /** Default seconds between writes of the metrics file. */
+    private static final long DEFAULT_INTERVAL = 15;
+    /** Nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Upper bounds of the duration buckets, in seconds. */
+    private static final double[] BOUNDS = {
+        0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    /** Duration histograms, by command. */
+    private static final ConcurrentHashMap<String, Histogram> COMMANDS =
+        new ConcurrentHashMap<String, Histogram>();
+    /** Commits found in the commit cache. */
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    /** Commits not found in the commit cache. */
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+    /** Objects read. */
+    private static final LongAdder OBJECTS_READ = new LongAdder();
+    /** Objects written. */
+    private static final LongAdder OBJECTS_WRITTEN = new LongAdder();
+    /** Bytes copied between repositories. */
+    private static final LongAdder BYTES_TRANSFERRED = new LongAdder();
+    /** Locks taken. */
+    private static final LongAdder LOCKS = new LongAdder();
+    /** Nanoseconds spent waiting for locks. */
+    private static final LongAdder LOCK_WAIT = new LongAdder();
+    /** The samples as of the last save, by name and labels. */
+    private static final HashMap<String, Double> SAVED =
+        new HashMap<String, Double>();
+    /** True once publishing has started. */
+    private static boolean _started;
+}
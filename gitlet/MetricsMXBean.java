@@ -0,0 +1,45 @@
+package gitlet;
+
+import java.util.Map;
+
+/**
+ * The operational metrics of gitlet as seen through JMX, registered as
+ * gitlet:type=Metrics when the system property gitlet.jmx is true.
+ * Counts are totals since the process started.
+ *  @author Tiffany Kim */
+
+public interface MetricsMXBean {
+
+    /** Return the number of commits found in the commit cache. */
+    long getCommitCacheHits();
+
+    /** Return the number of commits read because they were not cached. */
+    long getCommitCacheMisses();
+
+    /** Return the fraction of commit lookups found in the cache, or 0 if
+     *  there were none. */
+    double getCommitCacheHitRate();
+
+    /** Return the number of objects read from the object folder. */
+    long getObjectsRead();
+
+    /** Return the number of objects written to an object folder. */
+    long getObjectsWritten();
+
+    /** Return the number of bytes of objects copied by fetch and push. */
+    long getBytesTransferred();
+
+    /** Return the number of repository locks taken. */
+    long getLockAcquisitions();
+
+    /** Return the total time spent waiting for repository locks, in
+     *  seconds. */
+    double getLockWaitSeconds();
+
+    /** Return the number of times each command has run, by command. */
+    Map<String, Long> getCommandCounts();
+
+    /** Return the mean time each command took, in seconds, by
+     *  command. */
+    Map<String, Double> getCommandMeanSeconds();
+}
@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The SHA-1 hash naming an object, held as its 20 bytes rather than as
+ * a 40-digit hexadecimal string, for use as a compact key. Equality,
+ * hashing and ordering work on three machine words. The ordering is
+ * that of the hexadecimal names.
+ *  @author Tiffany Kim */
+
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** The hash whose bytes, read big-endian, are W0, W1 and W2. */
+    private ObjectId(long w0, long w1, int w2) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+    }
+
+    /** Return the hash whose 20 bytes start at OFFSET in BYTES. */
+    static ObjectId fromBytes(byte[] bytes, int offset) {
+        return new ObjectId(word(bytes, offset, Long.BYTES),
+                word(bytes, offset + Long.BYTES, Long.BYTES),
+                (int) word(bytes, offset + 2 * Long.BYTES, Integer.BYTES));
+    }
+
+    /** Return the hash named by the 40 hexadecimal digits HEXSTR. */
+    static ObjectId fromHex(String hexStr) {
+        if (hexStr.length() != 2 * BYTES) {
+            throw new IllegalArgumentException("bad object name " + hexStr);
+        }
+        return new ObjectId(hexWord(hexStr, 0, Long.BYTES),
+                hexWord(hexStr, 2 * Long.BYTES, Long.BYTES),
+                (int) hexWord(hexStr, 4 * Long.BYTES, Integer.BYTES));
+    }
+
+    /** Return the 20 bytes of the hash. */
+    byte[] toBytes() {
+        byte[] out = new byte[BYTES];
+        copyTo(out, 0);
+        return out;
+    }
+
+    /** Copy the 20 bytes of the hash into OUT at OFFSET. */
+    void copyTo(byte[] out, int offset) {
+        putWord(out, offset, _w0, Long.BYTES);
+        putWord(out, offset + Long.BYTES, _w1, Long.BYTES);
+        putWord(out, offset + 2 * Long.BYTES, _w2, Integer.BYTES);
+    }
+
+    /** Return the 40-digit hexadecimal name of the hash. */
+    String toHex() {
+        char[] out = new char[2 * BYTES];
+        hexWord(out, 0, _w0, Long.BYTES);
+        hexWord(out, 2 * Long.BYTES, _w1, Long.BYTES);
+        hexWord(out, 4 * Long.BYTES, _w2, Integer.BYTES);
+        return new String(out);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> Integer.SIZE);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_w0, other._w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(_w1, other._w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_w2, other._w2);
+        }
+        return c;
+    }
+
+    /** Return the hexadecimal numeral for BYTES, which need not be a
+     *  hash. */
+    static String toHex(byte[] bytes) {
+        char[] out = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            out[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            out[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    /** Return the bytes of the hexadecimal numeral HEXSTR. */
+    static byte[] hexBytes(String hexStr) {
+        byte[] out = new byte[hexStr.length() / 2];
+        for (int i = 0; i < out.length; i += 1) {
+            out[i] = (byte) ((digit(hexStr.charAt(2 * i)) << 4)
+                             | digit(hexStr.charAt(2 * i + 1)));
+        }
+        return out;
+    }
+
+    /** Return the big-endian word of N bytes at OFFSET in BYTES. */
+    private static long word(byte[] bytes, int offset, int n) {
+        long w = 0;
+        for (int i = 0; i < n; i += 1) {
+            w = (w << Byte.SIZE) | (bytes[offset + i] & 0xff);
+        }
+        return w;
+    }
+
+    /** Store the low N bytes of W big-endian at OFFSET in OUT. */
+    private static void putWord(byte[] out, int offset, long w, int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            out[offset + i] = (byte) w;
+            w >>>= Byte.SIZE;
+        }
+    }
+
+    /** Return the word of N bytes whose 2N hexadecimal digits start at
+     *  FROM in S. */
+    private static long hexWord(String s, int from, int n) {
+        long w = 0;
+        for (int i = 0; i < 2 * n; i += 1) {
+            w = (w << 4) | digit(s.charAt(from + i));
+        }
+        return w;
+    }
+
+    /** Write the 2N hexadecimal digits of the low N bytes of W into OUT
+     *  at FROM. */
+    private static void hexWord(char[] out, int from, long w, int n) {
+        for (int i = 2 * n - 1; i >= 0; i -= 1) {
+            out[from + i] = HEX[(int) (w & 0xf)];
+            w >>>= 4;
+        }
+    }
+
+    /** Return the value of the lowercase hexadecimal digit C. */
+    private static int digit(char c) {
+        int d = c < DIGITS.length ? DIGITS[c] : -1;
+        if (d < 0) {
+            throw new IllegalArgumentException("bad hexadecimal digit " + c);
+        }
+        return d;
+    }
+
+    /** Bytes in a hash. */
+    static final int BYTES = 20;
+    /** Hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /** Values of hexadecimal digits, by character, or -1. */
+    private static final int[] DIGITS = new int['g'];
+
+    static {
+        Arrays.fill(DIGITS, -1);
+        for (int i = 0; i < HEX.length; i += 1) {
+            DIGITS[HEX[i]] = i;
+        }
+    }
+
+    /** Pinned to the value computed when the class was added, since
+     *  repository state holds ObjectIds. */
+    private static final long serialVersionUID = 4858313864013017264L;
+
+    /** First eight bytes. */
+    private final long _w0;
+    /** Next eight bytes. */
+    private final long _w1;
+    /** Last four bytes. */
+    private final int _w2;
+}
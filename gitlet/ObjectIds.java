@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A numbering of objects by small ints, so that sets of objects can be
+ * kept as bitmaps. Numbers are given out in order and never change; the
+ * file object-ids in the object directory holds the hash of object i in
+ * record i. New numbers are kept in memory until saved.
+ *  @author Tiffany Kim */
+
+class ObjectIds {
+
+    /** A numbering stored in object directory DIR. */
+    private ObjectIds(File dir) {
+        _file = new File(dir, NAME);
+        _hashes = new ArrayList<ObjectId>();
+        _ids = new HashMap<ObjectId, Integer>();
+        _pending = new ByteArrayOutputStream();
+    }
+
+    /** Return the numbering in object directory DIR. A partly written
+     *  record left by a crash is discarded. */
+    static ObjectIds open(File dir) {
+        ObjectIds result = new ObjectIds(dir);
+        if (!result._file.exists()) {
+            return result;
+        }
+        byte[] data;
+        try {
+            data = Files.readAllBytes(result._file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int n = data.length / ObjectId.BYTES;
+        for (int i = 0; i < n; i += 1) {
+            result.put(ObjectId.fromBytes(data, i * ObjectId.BYTES));
+        }
+        if (data.length != n * ObjectId.BYTES) {
+            try (RandomAccessFile f =
+                     new RandomAccessFile(result._file, "rw")) {
+                f.setLength((long) n * ObjectId.BYTES);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of object HASH, giving it the next number if
+     *  it has none. */
+    int id(String hash) {
+        ObjectId oid = ObjectId.fromHex(hash);
+        Integer id = _ids.get(oid);
+        if (id == null) {
+            id = put(oid);
+            byte[] bytes = oid.toBytes();
+            _pending.write(bytes, 0, bytes.length);
+        }
+        return id;
+    }
+
+    /** Return the hash of the object numbered ID. */
+    String hash(int id) {
+        return _hashes.get(id).toHex();
+    }
+
+    /** Return the number of numbered objects. */
+    int size() {
+        return _hashes.size();
+    }
+
+    /** Append the numbers given out since the last save to the file,
+     *  to be made durable with the next batch of writes. */
+    void save() {
+        if (_pending.size() == 0) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(_file, true)) {
+            _pending.writeTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _pending.reset();
+        WriteBatch.touched(_file);
+    }
+
+    /** Give HASH the next number and return it. */
+    private int put(ObjectId hash) {
+        int id = _hashes.size();
+        _hashes.add(hash);
+        _ids.put(hash, id);
+        return id;
+    }
+
+    /** Name of the file of numbers. */
+    static final String NAME = "object-ids";
+
+    /** The file of numbers. */
+    private final File _file;
+    /** Hashes, by number. */
+    private final ArrayList<ObjectId> _hashes;
+    /** Numbers, by hash. */
+    private final HashMap<ObjectId, Integer> _ids;
+    /** Records of numbers not yet saved. */
+    private final ByteArrayOutputStream _pending;
+}
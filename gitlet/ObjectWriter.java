@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes objects in the background, so that the threads hashing files
+ * can go on to the next while earlier objects reach the disk. An object
+ * handed to write is stored through WriteBatch by a small pool of
+ * writer threads. The bytes waiting to be written are bounded; a caller
+ * that would exceed the bound waits for the writers to catch up.
+ *
+ * An object is not written until drain returns, and until the next
+ * WriteBatch.flush it is found only through WriteBatch.current, so code
+ * that reads an object back must not write it here. WriteBatch.flush
+ * drains first, so no state naming an object is committed before the
+ * object is written.
+ *  @author Tiffany Kim */
+
+class ObjectWriter {
+
+    /** Store DATA as the object FILE in the background. DATA must not be
+     *  changed afterwards. */
+    static void write(File file, byte[] data) {
+        Metrics.objectWritten();
+        int cost = Math.min(data.length, MAX_QUEUED);
+        SPACE.acquireUninterruptibly(cost);
+        try {
+            IN_FLIGHT.add(WRITERS.submit(() -> {
+                try {
+                    WriteBatch.write(file, data);
+                } finally {
+                    SPACE.release(cost);
+                }
+            }));
+        } catch (RuntimeException excp) {
+            SPACE.release(cost);
+            throw excp;
+        }
+    }
+
+    /** Wait until every object handed to write so far is written. Throws
+     *  IllegalArgumentException if one of them could not be. */
+    static void drain() {
+        RuntimeException failure = null;
+        for (Future<?> f = IN_FLIGHT.poll(); f != null;
+             f = IN_FLIGHT.poll()) {
+            try {
+                f.get();
+            } catch (ExecutionException excp) {
+                if (failure == null) {
+                    failure = excp.getCause() instanceof RuntimeException
+                        ? (RuntimeException) excp.getCause()
+                        : new IllegalArgumentException(excp.getCause());
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Most bytes of objects waiting to be written. */
+    private static final int MAX_QUEUED = 64 << 20;
+    /** Number of writer threads. */
+    private static final int WRITER_COUNT = 4;
+
+    /** Bytes that may still be queued. */
+    private static final Semaphore SPACE = new Semaphore(MAX_QUEUED);
+    /** Writes not yet waited for. */
+    private static final ConcurrentLinkedQueue<Future<?>> IN_FLIGHT =
+        new ConcurrentLinkedQueue<Future<?>>();
+    /** The writer threads, which do not keep the program running. */
+    private static final ExecutorService WRITERS =
+        Executors.newFixedThreadPool(WRITER_COUNT, r -> {
+            Thread t = new Thread(r, "gitlet-writer");
+            t.setDaemon(true);
+            return t;
+        });
+}
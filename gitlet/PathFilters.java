@@ -0,0 +1,224 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bloom filters of the paths each commit changed relative to its first
+ * parent, kept beside the commit index so that a path-limited log can
+ * pass over most commits without reading their file trees. A changed
+ * file's folders count as changed too. A filter may claim a path that
+ * did not change, but never misses one that did; a commit that changed
+ * more than MAX_PATHS paths gets an empty filter, which claims all.
+ * The file is append-only like the commit index; each record is a
+ * commit hash, the length of its filter, and the filter's words.
+ *  @author Tiffany Kim */
+
+class PathFilters {
+
+    /** Filters stored in object directory DIR. */
+    private PathFilters(File dir) {
+        _file = new File(dir, NAME);
+        _filters = new HashMap<ObjectId, long[]>();
+    }
+
+    /** Return the filters in object directory DIR. A partly written
+     *  record left by a crash is discarded. */
+    static PathFilters open(File dir) {
+        PathFilters result = new PathFilters(dir);
+        if (!result._file.exists()) {
+            return result;
+        }
+        long good = 0;
+        byte[] hash = new byte[ObjectId.BYTES];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(result._file)))) {
+            while (true) {
+                int n = in.read(hash);
+                if (n < 0) {
+                    break;
+                } else if (n < ObjectId.BYTES) {
+                    in.readFully(hash, n, ObjectId.BYTES - n);
+                }
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i += 1) {
+                    words[i] = in.readLong();
+                }
+                result._filters.put(ObjectId.fromBytes(hash, 0), words);
+                good += ObjectId.BYTES + Integer.BYTES
+                    + (long) Long.BYTES * words.length;
+            }
+        } catch (EOFException excp) {
+            try (RandomAccessFile f = new RandomAccessFile(result._file,
+                                                           "rw")) {
+                f.setLength(good);
+            } catch (IOException excp2) {
+                throw new IllegalArgumentException(excp2.getMessage());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Return true iff COMMIT has a filter. */
+    boolean contains(String commit) {
+        return _filters.containsKey(ObjectId.fromHex(commit));
+    }
+
+    /** Return true iff the filter of COMMIT shows that it did not change
+     *  PATH, a file or folder. Return false if it may have, or if COMMIT
+     *  has no filter. */
+    boolean unchanged(String commit, String path) {
+        long[] words = _filters.get(ObjectId.fromHex(commit));
+        if (words == null || words.length == 0) {
+            return false;
+        }
+        long bits = (long) words.length * Long.SIZE;
+        long h = hash(path);
+        int h1 = (int) h, h2 = (int) (h >>> Integer.SIZE) | 1;
+        for (int i = 0; i < PROBES; i += 1) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            if ((words[(int) (bit / Long.SIZE)] & (1L << bit)) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Add the filter of COMMIT, whose file tree is TREE and whose first
+     *  parent's tree is PARENT, unless it has one. A process that may
+     *  only read the repository keeps it in memory. */
+    void add(String commit, Map<String, String> tree,
+             Map<String, String> parent) {
+        ObjectId id = ObjectId.fromHex(commit);
+        if (_filters.containsKey(id)) {
+            return;
+        }
+        long[] words = filter(changed(tree, parent));
+        _filters.put(id, words);
+        if (RepoLock.readOnly()) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(_file, true))) {
+            out.write(record(id, words));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        WriteBatch.touched(_file);
+    }
+
+    /** Rewrite the file so that it holds only the filters of the commits
+     *  in KEEP. */
+    void retain(Set<ObjectId> keep) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        _filters.keySet().retainAll(keep);
+        for (Map.Entry<ObjectId, long[]> e : _filters.entrySet()) {
+            byte[] rec = record(e.getKey(), e.getValue());
+            records.write(rec, 0, rec.length);
+        }
+        WriteBatch.replace(_file, records.toByteArray());
+    }
+
+    /** Return the paths whose contents differ between TREE and PARENT,
+     *  with the folders that hold them. */
+    static Set<String> changed(Map<String, String> tree,
+                               Map<String, String> parent) {
+        HashSet<String> result = new HashSet<String>();
+        for (Map.Entry<String, String> e : tree.entrySet()) {
+            if (!e.getValue().equals(parent.get(e.getKey()))) {
+                addWithFolders(result, e.getKey());
+            }
+        }
+        for (String name : parent.keySet()) {
+            if (!tree.containsKey(name)) {
+                addWithFolders(result, name);
+            }
+        }
+        return result;
+    }
+
+    /** Add NAME and every folder above it to PATHS. */
+    private static void addWithFolders(Set<String> paths, String name) {
+        for (int end = name.lastIndexOf('/'); paths.add(name) && end > 0;
+             end = name.lastIndexOf('/')) {
+            name = name.substring(0, end);
+        }
+    }
+
+    /** Return the filter holding PATHS. */
+    private static long[] filter(Set<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return new long[0];
+        }
+        int n = Math.max(1, (paths.size() * BITS_PER_PATH + Long.SIZE - 1)
+                         / Long.SIZE);
+        long[] words = new long[n];
+        long bits = (long) n * Long.SIZE;
+        for (String path : paths) {
+            long h = hash(path);
+            int h1 = (int) h, h2 = (int) (h >>> Integer.SIZE) | 1;
+            for (int i = 0; i < PROBES; i += 1) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+                words[(int) (bit / Long.SIZE)] |= 1L << bit;
+            }
+        }
+        return words;
+    }
+
+    /** Return the 64-bit FNV-1a hash of the UTF-8 bytes of PATH. */
+    private static long hash(String path) {
+        long h = FNV_OFFSET;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /** Return the bytes of the record of COMMIT with filter WORDS. */
+    private static byte[] record(ObjectId commit, long[] words) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(commit.toBytes());
+            out.writeInt(words.length);
+            for (long w : words) {
+                out.writeLong(w);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Name of the file of filters. */
+    static final String NAME = "path-filters";
+    /** Most changed paths given a filter. */
+    private static final int MAX_PATHS = 512;
+    /** Bits of filter per changed path. */
+    private static final int BITS_PER_PATH = 10;
+    /** Bits set per path. */
+    private static final int PROBES = 7;
+    /** Starting value of FNV-1a hashes. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /** Multiplier of FNV-1a hashes. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The file of filters. */
+    private final File _file;
+    /** Filters, by commit. */
+    private final HashMap<ObjectId, long[]> _filters;
+}
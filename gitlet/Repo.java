@@ -1,12 +1,32 @@
 package gitlet;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.util.regex.Pattern;
+import java.time.format.DateTimeFormatter;
 
 /** A repository.
  *  @author Tiffany Kim */
@@ -18,8 +38,7 @@ public class Repo extends Utils implements Serializable {
         myDirectory = new File(".");
         folder = join(myDirectory, ".gitlet");
         _remoteDir = new TreeMap<String, File>();
-        _commitToMessage = new TreeMap<String, String>();
-        commitList = new ArrayList<String>();
+        commitList = new LinkedHashSet<ObjectId>();
         headCache = new Commit();
         _branches = new TreeMap<String, String>();
         head = headCache.getHash();
@@ -28,6 +47,85 @@ public class Repo extends Utils implements Serializable {
         _stagingArea = new Staging(headCache);
     }
 
+    /** Initialize a repo in the current directory as a clone of the
+     *  repository whose objects are in REMOTE, which is locked for
+     *  reading. The branches of REMOTE become remote branches of a
+     *  remote named origin, and its current branch is checked out. */
+    Repo(File remote) {
+        Repo source = readObject(join(remote, "GITLET"), Repo.class);
+        myDirectory = new File(".");
+        folder = join(myDirectory, ".gitlet");
+        _remoteDir = new TreeMap<String, File>();
+        _remoteDir.put(ORIGIN, remote.getAbsoluteFile());
+        commitList = new LinkedHashSet<ObjectId>(source.commitList);
+        _branches = new TreeMap<String, String>();
+        for (Map.Entry<String, String> b : source._branches.entrySet()) {
+            String name = b.getKey();
+            int slash = name.indexOf('/');
+            if (slash < 0 || !source._remoteDir.containsKey(
+                    name.substring(0, slash))) {
+                _branches.put(ORIGIN + "/" + name, b.getValue());
+            }
+        }
+        _curBranch = source._curBranch;
+        head = source.head;
+        _branches.put(_curBranch, head);
+        upstreams().put(_curBranch, ORIGIN + "/" + _curBranch);
+        _shallow = new TreeSet<String>(source.shallow());
+        if (!source.promisors().isEmpty()) {
+            promisors().add(ORIGIN);
+        }
+        headCache = readObject(join(remote, head), Commit.class);
+        Map<String, String> tree = headCache.getTree();
+        for (String file : tree.keySet()) {
+            if (join(myDirectory, file).exists()) {
+                throw new GitletException(
+                        "There is an untracked file in the way; "
+                                + "delete it or add it first.");
+            }
+        }
+        cloneObjects(remote);
+        _stagingArea = new Staging(headCache);
+        ensureBlobs(tree.values());
+        for (Map.Entry<String, String> e : tree.entrySet()) {
+            extractFile(e.getKey(), e.getValue());
+        }
+    }
+
+    /** Give this repository every object of the repository whose
+     *  objects are in REMOTE. Objects never change once written, so
+     *  they are hard-linked, costing no space, unless the file system
+     *  refuses; from then on they are copied. The commit index, path
+     *  filters and object numbering are appended in place and so are
+     *  always copied, along with the bitmaps that depend on the
+     *  numbering. */
+    private void cloneObjects(File remote) {
+        AtomicBoolean link = new AtomicBoolean(true);
+        plainFilenamesIn(remote).parallelStream()
+            .filter(Utils::isObjectName)
+            .forEach(name -> {
+                File from = join(remote, name), to = join(folder, name);
+                if (link.get()) {
+                    try {
+                        Files.createLink(to.toPath(), from.toPath());
+                        WriteBatch.touched(to);
+                        return;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        link.set(false);
+                    }
+                }
+                WriteBatch.copy(from, to);
+            });
+        for (String name : List.of(CommitIndex.INDEX_NAME,
+                CommitIndex.MESSAGE_NAME, ObjectIds.NAME, BitmapIndex.NAME,
+                PathFilters.NAME)) {
+            if (join(remote, name).isFile()) {
+                WriteBatch.replace(join(folder, name),
+                        readContents(join(remote, name)));
+            }
+        }
+    }
+
     /** Turn current stage area to commit with message MESSAGE.
      *  And clear the Area;
      *  Store the newest commit hash;
@@ -37,62 +135,113 @@ public class Repo extends Utils implements Serializable {
             throw new GitletException("No changes added to the commit.");
         }
         head = headCache.getHash();
+        Map<String, String> parentTree = headCache.getTree();
         headCache = new Commit(_stagingArea, message, head);
         byte[] blob = serialize(headCache);
         head = headCache.getHash();
-        commitList.add(head);
-        _commitToMessage.put(head, message);
-        File outputDir = join(folder, head);
-        writeContents(outputDir, blob);
+        ObjectWriter.write(join(folder, head), blob);
+        index().add(headCache);
+        commitList.add(ObjectId.fromHex(head));
+        pathFilters().add(head, headCache.getTree(), parentTree);
         _stagingArea = new Staging(headCache);
         _branches.put(_curBranch, head);
+        extendBitmaps(head);
+        ObjectWriter.drain();
     }
 
-    /** Add a new merge commit with message MESSAGE, and another parent
-     *  hash COPARENT.
+    /** Add a new merge commit with message MESSAGE, whose other parents
+     *  are the heads of branches COPARENTS, in order.
      *  */
-    private void mergeCommit(String message, String coparent) {
+    private void mergeCommit(String message, List<String> coparents) {
         if (_stagingArea.getTree().equals(headCache.getTree())) {
             throw new GitletException("No changes added to the commit.");
         }
         head = headCache.getHash();
+        Map<String, String> parentTree = headCache.getTree();
         headCache = new Commit(_stagingArea, message, head);
-        headCache.setCoParent(_branches.get(coparent));
+        for (String coparent : coparents) {
+            headCache.addCoParent(_branches.get(coparent));
+        }
         byte[] blob = serialize(headCache);
         head = headCache.getHash();
-        commitList.add(head);
-        _commitToMessage.put(head, message);
-        writeContents(join(folder, head), blob);
+        ObjectWriter.write(join(folder, head), blob);
+        index().add(headCache);
+        commitList.add(ObjectId.fromHex(head));
+        pathFilters().add(head, headCache.getTree(), parentTree);
         _stagingArea = new Staging(headCache);
         _branches.put(_curBranch, head);
+        extendBitmaps(head);
     }
 
     /** Store the initial hash. */
     public void newCommit() {
         String hash = headCache.getHash();
-        writeContents(join(folder, hash), serialize(headCache));
-        commitList.add(hash);
-        _commitToMessage.put(hash, "initial commit");
+        WriteBatch.write(join(folder, hash), serialize(headCache));
+        commitList.add(ObjectId.fromHex(hash));
+        index().add(headCache);
+        pathFilters().add(hash, headCache.getTree(),
+                new HashMap<String, String>());
         _branches.put(_curBranch, head);
     }
 
-    /** Add a new file FILE to index and local disk. */
-    public void addFile(String file) {
-        byte[] blob = readContents(join(myDirectory, file));
-        String hash = readFileHash(file);
-        writeContents(join(folder, hash), blob);
+    /** Add a new file FILE to index and local disk. FILE is a path
+     *  relative to the working folder. Its blob may still be being
+     *  written when this returns. */
+    private void addFile(String file) {
+        file = WorkTree.normalize(file);
+        String hash = Blobs.store(folder, join(myDirectory, file));
         _stagingArea.addFile(file, hash);
     }
 
-    /** Extract a file FILE from blobs HASH, store it with name. */
+    /** Add the files named by PATHS to the index. Each path is a file, a
+     *  folder standing for the files under it that are not ignored, or
+     *  a glob as in .gitletignore matched against the whole path of each
+     *  file that is not ignored. The files are stored concurrently and
+     *  staged together; if a path names nothing, nothing is added. */
+    public void addFiles(List<String> paths) {
+        TreeSet<String> names = new TreeSet<String>();
+        TreeSet<String> working = null;
+        for (String path : paths) {
+            String name = WorkTree.normalize(path);
+            File file = join(myDirectory, name);
+            if (file.isFile()) {
+                names.add(name);
+            } else if (file.isDirectory()) {
+                names.addAll(WorkTree.files(myDirectory, name, ignoreRules()));
+            } else if (Ignore.isGlob(name)) {
+                if (working == null) {
+                    working = WorkTree.files(myDirectory, ignoreRules());
+                }
+                Pattern glob = Ignore.toRegex(name);
+                int before = names.size();
+                working.stream().filter(f -> glob.matcher(f).matches())
+                    .forEach(names::add);
+                if (names.size() == before) {
+                    throw new GitletException("File does not exist.");
+                }
+            } else {
+                throw new GitletException("File does not exist.");
+            }
+        }
+        Map<String, String> hashes = new ConcurrentHashMap<String, String>();
+        names.parallelStream().forEach(name -> hashes.put(name,
+                Blobs.store(folder, join(myDirectory, name))));
+        for (String name : names) {
+            _stagingArea.addFile(name, hashes.get(name));
+        }
+        ObjectWriter.drain();
+    }
+
+    /** Extract a file FILE from blobs HASH, store it with name, creating
+     *  its folders as needed. */
     private void extractFile(String file, String hash) {
-        File blobDir = join(folder, hash);
-        File writeDir = join(myDirectory, file);
-        writeContents(writeDir, readContents(blobDir));
+        WorkTree.makeParents(myDirectory, file);
+        Blobs.extract(folder, hash, join(myDirectory, file));
     }
 
     /** Remove FILE from index. */
     public void removeFile(String file) {
+        file = WorkTree.normalize(file);
         if (_stagingArea.tracked(file).length() == 0
                 && headCache.tracked(file).length() == 0) {
             throw new GitletException("No reason to remove the file.");
@@ -102,27 +251,140 @@ public class Repo extends Utils implements Serializable {
         }
     }
 
-    /** Remove FILE from folder. */
+    /** Remove FILE from folder, along with any folders it leaves
+     *  empty. */
     private void rmfromFolder(String file) {
-        restrictedDelete(join(myDirectory, file));
+        WorkTree.delete(myDirectory, file);
     }
 
-    /** Show logs. */
-    public void printLog() {
-        String print = head;
-        while (!(print.length() == 0)) {
-            Commit c = getCommit(print);
-            System.out.println(c.toString());
-            print = c.getParent();
+    /** Show the history of the head commit selected by OPTS. */
+    public void printLog(LogOptions opts) {
+        PrintStream out = logStream();
+        List<String> paths = normalizePaths(opts.paths);
+        int shown = 0;
+        CommitIterator commits = new CommitIterator(index(), head);
+        while (shown < opts.limit && commits.hasNext()) {
+            CommitInfo c = commits.next();
+            if (opts.tooOld(c.getTime())) {
+                break;
+            } else if (opts.tooNew(c.getTime()) || !changes(c, paths)) {
+                continue;
+            }
+            printLogEntry(out, c, opts);
+            shown += 1;
+            if (shown % LOG_PAGE == 0 && pageFailed(out)) {
+                return;
+            }
         }
+        out.flush();
     }
 
-    /** Show global log. */
-    public void printGlobalLog() {
-        for (String c : commitList) {
-            Commit commit = getCommit(c.toString());
-            System.out.println(commit);
+    /** Show global log of the commits selected by OPTS. */
+    public void printGlobalLog(LogOptions opts) {
+        PrintStream out = logStream();
+        List<String> paths = normalizePaths(opts.paths);
+        int shown = 0;
+        for (CommitInfo commit : index().all()) {
+            if (shown >= opts.limit) {
+                break;
+            } else if (opts.tooOld(commit.getTime())
+                    || opts.tooNew(commit.getTime())
+                    || !changes(commit, paths)) {
+                continue;
+            }
+            printLogEntry(out, commit, opts);
+            shown += 1;
+            if (shown % LOG_PAGE == 0 && pageFailed(out)) {
+                return;
+            }
         }
+        out.flush();
+    }
+
+    /** Return PATHS in the form used in trees, or an empty list if one
+     *  of them is the whole working folder. */
+    private static List<String> normalizePaths(List<String> paths) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (String path : paths) {
+            String name = WorkTree.normalize(path);
+            if (name.length() == 0) {
+                return new ArrayList<String>();
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    /** Return true iff commit C changes one of the files or folders
+     *  PATHS relative to each of its parents, or if PATHS is empty. The
+     *  path filter of C rules out most commits without reading any file
+     *  tree. Shallow commits are compared with an empty tree. */
+    private boolean changes(CommitInfo c, List<String> paths) {
+        if (paths.isEmpty()) {
+            return true;
+        }
+        Map<String, String> tree = null;
+        ArrayList<Map<String, String>> parents = null;
+        for (String path : paths) {
+            if (pathFilters().unchanged(c.getHash(), path)) {
+                continue;
+            } else if (tree == null) {
+                tree = getCommit(c.getHash()).getTree();
+                parents = new ArrayList<Map<String, String>>();
+                for (String p : shallow().contains(c.getHash())
+                         ? new String[0] : c.getParents()) {
+                    parents.add(getCommit(p).getTree());
+                }
+                if (parents.isEmpty()) {
+                    parents.add(new HashMap<String, String>());
+                }
+            }
+            boolean changed = true;
+            for (Map<String, String> parent : parents) {
+                changed &= !subtree(tree, path).equals(subtree(parent, path));
+            }
+            if (changed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the entries of TREE for the file PATH or the files under
+     *  the folder PATH. */
+    private static Map<String, String> subtree(Map<String, String> tree,
+                                               String path) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        String prefix = path + "/";
+        for (Map.Entry<String, String> e : tree.entrySet()) {
+            if (e.getKey().equals(path) || e.getKey().startsWith(prefix)) {
+                result.put(e.getKey(), e.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Return a buffered stream for log output. */
+    private PrintStream logStream() {
+        return new PrintStream(
+            new BufferedOutputStream(System.out, OUTPUT_BUFFER), false);
+    }
+
+    /** Print log entry for commit C to OUT in the format given by OPTS. */
+    private void printLogEntry(PrintStream out, CommitInfo c,
+                               LogOptions opts) {
+        if (opts.oneline) {
+            out.println(c.toOneLine());
+        } else {
+            out.println(c);
+        }
+    }
+
+    /** Flush a page of log output OUT. Return true iff the reader has
+     *  gone away, so there is no point producing more. */
+    private boolean pageFailed(PrintStream out) {
+        out.flush();
+        return System.out.checkError();
     }
 
     /** Get modification but not staged files, return a set. */
@@ -132,21 +394,125 @@ public class Repo extends Utils implements Serializable {
                 : _stagingArea.getTree().entrySet()) {
             String file = e.getKey();
             String hash = e.getValue();
-            if (!hash.equals(readFileHash(file))) {
+            if (inSparse(file) && !hash.equals(workingHash(file))) {
                 result.add(file);
             }
         }
         return result;
     }
 
-    /** Print the status. */
+    /** Watch the working folder for changes, so that later calls of
+     *  printStatus on this repository rehash only the files that
+     *  changed. For programs that keep a Repo open across commands. */
+    public void watchWorkingFolder() {
+        if (_watcher == null) {
+            _watcher = DirtySet.watch(myDirectory, ignoreRules());
+        }
+    }
+
+    /** Stop watching the working folder. */
+    public void unwatchWorkingFolder() {
+        if (_watcher != null) {
+            _watcher.close();
+            _watcher = null;
+        }
+    }
+
+    /** Wait at most MILLIS milliseconds for the watched working folder
+     *  to change. Return true iff it has changed since the last call of
+     *  printStatus, or may have. */
+    public boolean awaitWorkingFolder(long millis) {
+        return _watcher == null || _watcher.await(millis);
+    }
+
+    /** Take over the watch of the working folder, and what it has
+     *  learned, from OLDER, an earlier reading of this repository. A
+     *  program watching the working folder reads the repository again
+     *  when another process changes it, and so need not scan the
+     *  working folder again. A changed sparse checkout starts a new
+     *  watch. */
+    public void keepWatch(Repo older) {
+        if (!Objects.equals(_sparse, older._sparse)) {
+            older.unwatchWorkingFolder();
+            watchWorkingFolder();
+            return;
+        }
+        _watcher = older._watcher;
+        _ignore = older._ignore;
+        _workingFiles = older._workingFiles;
+        _workingHashes = older._workingHashes;
+        older._watcher = null;
+    }
+
+    /** Bring the record of the files in the working folder up to date,
+     *  looking only at the files that changed if the folder is watched
+     *  and scanning it in full otherwise. */
+    private void refreshWorkingFolder() {
+        Ignore ignore = ignoreRules();
+        Set<String> changed = _watcher == null ? null : _watcher.drain();
+        if (changed == null || _workingFiles == null) {
+            _workingFiles = WorkTree.files(myDirectory, ignore);
+            _workingHashes = new HashMap<String, String>();
+            return;
+        }
+        for (String name : changed) {
+            File entry = join(myDirectory, name);
+            _workingHashes.remove(name);
+            if (entry.isFile()) {
+                _workingFiles.add(name);
+                continue;
+            }
+            _workingFiles.remove(name);
+            if (!entry.isDirectory()) {
+                /* '0' follows '/', so these are the files under NAME. */
+                Set<String> under =
+                    _workingFiles.subSet(name + "/", name + "0");
+                _workingHashes.keySet().removeAll(under);
+                under.clear();
+            }
+        }
+    }
+
+    /** Return the hash of working file FILE as of the last refresh, or
+     *  an empty string if it is absent. Files are hashed once until they
+     *  change. Ignored files are not scanned or watched, so a tracked
+     *  one is hashed afresh. */
+    private String workingHash(String file) {
+        if (_workingFiles.contains(file)) {
+            return _workingHashes.computeIfAbsent(file, this::readFileHash);
+        } else if (ignoreRules().ignoredPath(file)) {
+            return readFileHash(file);
+        }
+        return "";
+    }
+
+    /** Return the rules of the .gitletignore file, loading them again if
+     *  it has changed. A watch made under old rules is replaced, which
+     *  forces a full scan. */
+    private Ignore ignoreRules() {
+        if (_ignore == null || _ignore.stale(myDirectory)) {
+            _ignore = Ignore.load(myDirectory).within(cone());
+            if (_watcher != null) {
+                _watcher.close();
+                _watcher = DirtySet.watch(myDirectory, _ignore);
+            }
+        }
+        return _ignore;
+    }
+
+    /** Print the status. A branch with an upstream is followed by how
+     *  far the two have diverged. */
     public void printStatus() {
+        refreshWorkingFolder();
         System.out.println("=== Branches ===");
+        Map<String, int[]> counts = divergence();
         for (String s : _branches.keySet()) {
+            String note = tracking(s, counts);
+            note = note.length() == 0 ? "" : " " + note;
             if (s.equals(_curBranch)) {
-                System.out.println("*" + s);
+                System.out.println("*" + s + note);
             } else {
-                System.out.println(s);
+                System.out.println(s + note);
             }
         }
         System.out.println();
@@ -163,11 +529,10 @@ public class Repo extends Utils implements Serializable {
         }
         System.out.println();
 
-        TreeSet<String> allFilesNameSet
-                = new TreeSet<>(plainFilenamesIn(myDirectory));
+        TreeSet<String> allFilesNameSet = new TreeSet<>(_workingFiles);
         System.out.println("=== Modifications Not Staged For Commit ===");
         for (String s : getModifiedNotStaged()) {
-            if (allFilesNameSet.contains(s)) {
+            if (workingHash(s).length() != 0) {
                 System.out.println(s + " (modified)");
             } else {
                 System.out.println(s + " (deleted)");
@@ -182,12 +547,275 @@ public class Repo extends Utils implements Serializable {
         }
     }
 
-    /** Read and return a commit with hash HASH from the history. */
+    /** Print the changes from the staging area, or from commit COMMIT
+     *  if it is not null, to the files in the working folder. */
+    public void diffWorking(String commit) {
+        Map<String, String> old = _stagingArea.getTree();
+        if (commit != null) {
+            old = getCommit(commit).getTree();
+        }
+        TreeSet<String> files = new TreeSet<String>(old.keySet());
+        files.addAll(_stagingArea.getKeys());
+        HashMap<String, String> now = new HashMap<String, String>();
+        for (String file : files) {
+            String hash = inSparse(file) ? readFileHash(file)
+                : _stagingArea.tracked(file);
+            if (hash.length() != 0) {
+                now.put(file, hash);
+            }
+        }
+        printDiff(old, now, true);
+    }
+
+    /** Print the changes from commit COMMIT, or from the head commit if
+     *  it is null, to the staging area. */
+    public void diffStaged(String commit) {
+        Commit from = commit == null ? headCache : getCommit(commit);
+        printDiff(from.getTree(), _stagingArea.getTree(), false);
+    }
+
+    /** Print the changes from commit FROM to commit TO. */
+    public void diffCommits(String from, String to) {
+        printDiff(getCommit(from).getTree(), getCommit(to).getTree(), false);
+    }
+
+    /** Print a unified diff of every file whose blob differs between
+     *  trees OLD and NOW. NOW describes the working folder if WORKING,
+     *  otherwise it refers to stored blobs. */
+    private void printDiff(Map<String, String> old, Map<String, String> now,
+                           boolean working) {
+        TreeSet<String> files = new TreeSet<String>(old.keySet());
+        files.addAll(now.keySet());
+        HashSet<String> needed = new HashSet<String>();
+        for (String file : files) {
+            String a = old.get(file), b = now.get(file);
+            if (a != null && !a.equals(b)) {
+                needed.add(a);
+            }
+            if (b != null && !working && !b.equals(a)) {
+                needed.add(b);
+            }
+        }
+        ensureBlobs(needed);
+        BufferedOutputStream out =
+            new BufferedOutputStream(System.out, OUTPUT_BUFFER);
+        try {
+            for (String file : files) {
+                String a = old.get(file), b = now.get(file);
+                if (a != null && a.equals(b)) {
+                    continue;
+                }
+                File oldFile = a == null ? null : Blobs.file(folder, a);
+                File newFile = null;
+                if (b != null) {
+                    newFile = working
+                        ? join(myDirectory, file) : Blobs.file(folder, b);
+                }
+                Diff.writeUnified(out, file, a != null, b != null,
+                        MappedLines.map(oldFile), MappedLines.map(newFile));
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Print each line of FILE in commit COMMIT, or in the head commit if
+     *  it is null, with the commit that last changed it. */
+    public void blame(String commit, String file) {
+        Commit c = commit == null ? headCache : getCommit(commit);
+        String path = WorkTree.normalize(file);
+        String blob = c.tracked(path);
+        if (blob.equals("")) {
+            throw new GitletException("File does not exist in that commit.");
+        }
+        String[] owners = blameLines(c.getHash(), path);
+        ensureBlobs(List.of(blob));
+        MappedLines lines = MappedLines.map(Blobs.file(folder, blob));
+        DateTimeFormatter date = DateTimeFormatter.ISO_LOCAL_DATE
+            .withZone(ZoneId.systemDefault());
+        PrintStream out = logStream();
+        try {
+            for (int i = 0; i < lines.size(); i += 1) {
+                out.printf("%s (%s %" + BLAME_WIDTH + "d) ",
+                        owners[i].substring(0, BLAME_ABBREV),
+                        date.format(index().get(owners[i]).getTime()), i + 1);
+                lines.write(i, out);
+                if (!lines.terminated(i)) {
+                    out.println();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        out.flush();
+    }
+
+    /** Return the commits that last changed each line of file PATH in
+     *  commit START. The walk passes over commits that leave the file's
+     *  blob as it was, then diffs each version against the versions in
+     *  its parents, so that unchanged lines keep the parent's commit.
+     *  Results new to the blame cache are saved in it, and versions
+     *  already cached end the walk. */
+    private String[] blameLines(String start, String path) {
+        BlameCache cache = BlameCache.open(folder);
+        HashMap<String, String[]> done = new HashMap<String, String[]>();
+        HashMap<String, String> origins = new HashMap<String, String>();
+        ArrayDeque<String> work = new ArrayDeque<String>();
+        work.push(start);
+        while (!work.isEmpty()) {
+            String c = work.peek();
+            String[] owners = cache.get(c, path);
+            if (done.containsKey(c) || owners != null) {
+                done.putIfAbsent(c, owners);
+                work.pop();
+                continue;
+            }
+            String origin = origins.computeIfAbsent(c,
+                k -> blameOrigin(k, path));
+            if (!origin.equals(c)) {
+                if (done.containsKey(origin)) {
+                    done.put(c, done.get(origin));
+                    work.pop();
+                } else {
+                    work.push(origin);
+                }
+                continue;
+            }
+            ArrayList<String> parents = new ArrayList<String>();
+            for (String p : shallow().contains(c) ? new String[0]
+                     : index().get(c).getParents()) {
+                if (!getCommit(p).tracked(path).equals("")) {
+                    parents.add(p);
+                }
+            }
+            boolean ready = true;
+            for (String p : parents) {
+                if (!done.containsKey(p)) {
+                    work.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                owners = attribute(c, path, parents, done);
+                cache.put(c, path, owners);
+                done.put(c, owners);
+                work.pop();
+            }
+        }
+        if (cache.get(start, path) == null) {
+            cache.put(start, path, done.get(start));
+        }
+        cache.save();
+        return done.get(start);
+    }
+
+    /** Return the oldest commit reached from C by following parents
+     *  that hold the same blob for PATH as C does. The path filter of C
+     *  vouches for its first parent without reading any tree. */
+    private String blameOrigin(String c, String path) {
+        String blob = getCommit(c).tracked(path);
+        while (!shallow().contains(c)) {
+            String next = null;
+            String[] parents = index().get(c).getParents();
+            if (parents.length > 0 && pathFilters().unchanged(c, path)) {
+                next = parents[0];
+            } else {
+                for (String p : parents) {
+                    if (getCommit(p).tracked(path).equals(blob)) {
+                        next = p;
+                        break;
+                    }
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            c = next;
+        }
+        return c;
+    }
+
+    /** Return the commits that last changed each line of file PATH in
+     *  commit C, given those of its versions in PARENTS, which are
+     *  found in DONE. Lines that come from no parent belong to C. */
+    private String[] attribute(String c, String path, List<String> parents,
+                               Map<String, String[]> done) {
+        String blob = getCommit(c).tracked(path);
+        ensureBlobs(List.of(blob));
+        MappedLines lines = MappedLines.map(Blobs.file(folder, blob));
+        String[] owners = new String[lines.size()];
+        for (String p : parents) {
+            String pBlob = getCommit(p).tracked(path);
+            ensureBlobs(List.of(pBlob));
+            MappedLines old = MappedLines.map(Blobs.file(folder, pBlob));
+            String[] oldOwners = done.get(p);
+            int a = 0, b = 0;
+            for (Diff.Edit e : Diff.edits(old, lines)) {
+                for (; b < e.bStart; a += 1, b += 1) {
+                    if (owners[b] == null) {
+                        owners[b] = oldOwners[a];
+                    }
+                }
+                a = e.aEnd;
+                b = e.bEnd;
+            }
+            for (; b < owners.length; a += 1, b += 1) {
+                if (owners[b] == null) {
+                    owners[b] = oldOwners[a];
+                }
+            }
+        }
+        for (int i = 0; i < owners.length; i += 1) {
+            if (owners[i] == null) {
+                owners[i] = c;
+            }
+        }
+        return owners;
+    }
+
+    /** Return true iff HASH names a commit in the history. */
+    private boolean hasCommit(String hash) {
+        return isObjectName(hash)
+            && commitList.contains(ObjectId.fromHex(hash));
+    }
+
+    /** Return the hashes of all commits in the history. */
+    private List<String> commitHashes() {
+        ArrayList<String> result = new ArrayList<String>();
+        for (ObjectId c : commitList) {
+            result.add(c.toHex());
+        }
+        return result;
+    }
+
+    /** Read and return a commit with hash HASH from the history. The
+     *  most recently used commits are kept, so walks that revisit
+     *  commits read each once; commits never change, and callers must
+     *  not change the trees of those returned. */
     public Commit getCommit(String hash) {
-        if (!commitList.contains(hash)) {
+        if (!hasCommit(hash)) {
             throw new GitletException("No commit with that id exists.");
         }
-        return readObject(join(folder, hash), Commit.class);
+        if (_commits == null) {
+            _commits = new LinkedHashMap<String, Commit>(
+                    COMMIT_CACHE_SIZE, LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Commit> eldest) {
+                    return size() > COMMIT_CACHE_SIZE;
+                }
+            };
+        }
+        Commit c = _commits.get(hash);
+        Metrics.commitLookup(c != null);
+        if (c == null) {
+            Metrics.objectRead();
+            c = readObject(WriteBatch.current(join(folder, hash)),
+                    Commit.class);
+            _commits.put(hash, c);
+        }
+        return c;
     }
 
     /** Checkout to branch NAME. */
@@ -205,30 +833,35 @@ public class Repo extends Utils implements Serializable {
 
     /** Reset a FILE from head. */
     public void revertFile(String file) {
+        file = WorkTree.normalize(file);
         String hashBlob = headCache.tracked(file);
         if (hashBlob.equals("")) {
             throw new GitletException("File does not exist in that commit.");
         } else {
+            ensureBlobs(List.of(hashBlob));
             extractFile(file, hashBlob);
         }
     }
 
     /** Reset a file from past commit COMMIT, MODIFIED FILE NOT STAGED. */
     public void revertFile(String commit, String file) {
+        file = WorkTree.normalize(file);
         String hashBlob = getCommit(commit).tracked(file);
         if (hashBlob.length() == 0) {
             throw new GitletException("File does not exist in that commit.");
         } else {
+            ensureBlobs(List.of(hashBlob));
             extractFile(file, hashBlob);
         }
     }
 
     /** Simply reset to a commit(dangerous) COMMIT. */
     public void dangerousReset(String commit) {
-        for (String f : _stagingArea.getTree().keySet()) {
+        for (String f : checkedOut(_stagingArea.getTree()).keySet()) {
             rmfromFolder(f);
         }
-        HashMap<String, String> oldTree = getCommit(commit).getTree();
+        Map<String, String> oldTree = checkedOut(getCommit(commit).getTree());
+        ensureBlobs(oldTree.values());
         for (String f : oldTree.keySet()) {
             extractFile(f, oldTree.get(f));
         }
@@ -238,12 +871,14 @@ public class Repo extends Utils implements Serializable {
         _stagingArea = new Staging(headCache);
     }
 
-    /** Reset whole working folder to past commit COMMIT. */
+    /** Reset whole working folder to past commit COMMIT. Only the files
+     *  in the sparse checkout are written. */
     public void revertWorkingFolder(String commit) {
-        if (!commitList.contains(commit)) {
+        if (!hasCommit(commit)) {
             throw new GitletException("No commit with that id exists.");
         }
-        HashMap<String, String> oldTree = getCommit(commit).getTree();
+        Map<String, String> oldTree = checkedOut(getCommit(commit).getTree());
+        ensureBlobs(oldTree.values());
         for (String file : oldTree.keySet()) {
             if (_stagingArea.tracked(file).equals("")) {
                 File fileDir = join(myDirectory, file);
@@ -254,7 +889,7 @@ public class Repo extends Utils implements Serializable {
                 }
             }
         }
-        for (String f : _stagingArea.getTree().keySet()) {
+        for (String f : checkedOut(_stagingArea.getTree()).keySet()) {
             rmfromFolder(f);
         }
         for (String f : oldTree.keySet()) {
@@ -266,6 +901,196 @@ public class Repo extends Utils implements Serializable {
         _branches.put(_curBranch, head);
     }
 
+    /** Check out only the files directly in the working folder and those
+     *  under FOLDERS, or every file if FOLDERS is null. Tracked files
+     *  leaving the checkout are deleted and those entering it are
+     *  written. Nothing is changed if a file leaving has changes that
+     *  are not staged, or an untracked file is in the way. */
+    public void setSparse(List<String> folders) {
+        TreeSet<String> names = null;
+        if (folders != null) {
+            names = new TreeSet<String>();
+            for (String f : folders) {
+                String name = WorkTree.normalize(f);
+                if (name.length() == 0) {
+                    throw new GitletException(
+                            "A sparse folder must be inside the working"
+                            + " folder.");
+                }
+                names.add(name);
+            }
+        }
+        Sparse next = names == null ? null : new Sparse(names);
+        TreeMap<String, String> leaving = new TreeMap<String, String>();
+        TreeMap<String, String> entering = new TreeMap<String, String>();
+        for (Map.Entry<String, String> e
+                : _stagingArea.getTree().entrySet()) {
+            String file = e.getKey();
+            boolean was = inSparse(file);
+            boolean is = next == null || next.includes(file);
+            String hash = readFileHash(file);
+            if (was && !is) {
+                if (hash.length() != 0 && !hash.equals(e.getValue())) {
+                    throw new GitletException("A file leaving the sparse"
+                            + " checkout has changes; add or restore it"
+                            + " first.");
+                }
+                leaving.put(file, e.getValue());
+            } else if (!was && is) {
+                if (hash.length() != 0 && !hash.equals(e.getValue())) {
+                    throw new GitletException(
+                            "There is an untracked file in the way; "
+                                    + "delete it or add it first.");
+                }
+                entering.put(file, e.getValue());
+            }
+        }
+        ensureBlobs(entering.values());
+        for (String file : leaving.keySet()) {
+            rmfromFolder(file);
+        }
+        for (Map.Entry<String, String> e : entering.entrySet()) {
+            extractFile(e.getKey(), e.getValue());
+        }
+        _sparse = names;
+        _cone = next;
+        _ignore = null;
+    }
+
+    /** Print the folders of the sparse checkout, if there is one. */
+    public void printSparse() {
+        if (_sparse != null) {
+            for (String folder : _sparse) {
+                System.out.println(folder);
+            }
+        }
+    }
+
+    /** Return the cone of the sparse checkout, or null if every file is
+     *  checked out. */
+    private Sparse cone() {
+        if (_cone == null && _sparse != null) {
+            _cone = new Sparse(_sparse);
+        }
+        return _cone;
+    }
+
+    /** Return true iff FILE is in the sparse checkout. */
+    private boolean inSparse(String file) {
+        return cone() == null || cone().includes(file);
+    }
+
+    /** Return the entries of file tree TREE that are in the sparse
+     *  checkout. */
+    private Map<String, String> checkedOut(Map<String, String> tree) {
+        if (cone() == null) {
+            return tree;
+        }
+        HashMap<String, String> result = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : tree.entrySet()) {
+            if (cone().includes(e.getKey())) {
+                result.put(e.getKey(), e.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Print each branch with its head's abbreviated hash, how far it
+     *  has diverged from its upstream, and its head's message. */
+    public void printBranches() {
+        Map<String, int[]> counts = divergence();
+        int width = 0;
+        for (String b : _branches.keySet()) {
+            width = Math.max(width, b.length());
+        }
+        for (Map.Entry<String, String> b : _branches.entrySet()) {
+            String note = tracking(b.getKey(), counts);
+            CommitInfo c = index().get(b.getValue());
+            System.out.printf("%s %-" + width + "s %s %s%s%n",
+                    b.getKey().equals(_curBranch) ? "*" : " ", b.getKey(),
+                    b.getValue().substring(0, CommitInfo.SHORT_HASH),
+                    note.length() == 0 ? "" : note + " ", c.getMessage());
+        }
+    }
+
+    /** Make UPSTREAM the upstream of branch BRANCH, or of the current
+     *  branch if BRANCH is null. Leave it without one if UPSTREAM is
+     *  null. */
+    public void setUpstream(String branch, String upstream) {
+        if (branch == null) {
+            branch = _curBranch;
+        }
+        if (!_branches.containsKey(branch)
+                || (upstream != null && !_branches.containsKey(upstream))) {
+            throw new GitletException(
+                    "A branch with that name does not exist.");
+        } else if (branch.equals(upstream)) {
+            throw new GitletException("A branch cannot track itself.");
+        } else if (upstream == null) {
+            upstreams().remove(branch);
+        } else {
+            upstreams().put(branch, upstream);
+        }
+    }
+
+    /** Return the number of commits each branch with an upstream has that
+     *  its upstream lacks, and the reverse, by branch. The counts of all
+     *  branches come from one walk of the commit index. */
+    private Map<String, int[]> divergence() {
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<String[]> pairs = new ArrayList<String[]>();
+        for (Map.Entry<String, String> u : upstreams().entrySet()) {
+            String mine = _branches.get(u.getKey());
+            String theirs = _branches.get(u.getValue());
+            if (mine != null && theirs != null) {
+                names.add(u.getKey());
+                pairs.add(new String[] {mine, theirs});
+            }
+        }
+        HashMap<String, int[]> result = new HashMap<String, int[]>();
+        if (pairs.isEmpty()) {
+            return result;
+        }
+        List<int[]> counts = new AheadBehind(index(), shallow()).count(pairs);
+        for (int i = 0; i < names.size(); i += 1) {
+            result.put(names.get(i), counts.get(i));
+        }
+        return result;
+    }
+
+    /** Return a note naming the upstream of BRANCH and how far they have
+     *  diverged according to COUNTS, or "" if BRANCH has no upstream. */
+    private String tracking(String branch, Map<String, int[]> counts) {
+        String upstream = upstreams().get(branch);
+        if (upstream == null) {
+            return "";
+        }
+        int[] c = counts.get(branch);
+        ArrayList<String> parts = new ArrayList<String>();
+        if (c == null) {
+            parts.add("gone");
+        } else {
+            if (c[0] > 0) {
+                parts.add("ahead " + c[0]);
+            }
+            if (c[1] > 0) {
+                parts.add("behind " + c[1]);
+            }
+        }
+        if (parts.isEmpty()) {
+            return "[" + upstream + "]";
+        }
+        return "[" + upstream + ": " + String.join(", ", parts) + "]";
+    }
+
+    /** Return the upstream of each branch that has one, by branch. */
+    private Map<String, String> upstreams() {
+        if (_upstreams == null) {
+            _upstreams = new TreeMap<String, String>();
+        }
+        return _upstreams;
+    }
+
     /** Create a new branch NAME. */
     public void createBranch(String name) {
         if (_branches.containsKey(name)) {
@@ -285,6 +1110,7 @@ public class Repo extends Utils implements Serializable {
                     "A branch with that name does not exist.");
         } else {
             _branches.remove(name);
+            upstreams().remove(name);
         }
     }
 
@@ -294,7 +1120,7 @@ public class Repo extends Utils implements Serializable {
         if (!fileDir.exists()) {
             return "";
         } else {
-            return sha1(readContents(fileDir));
+            return Blobs.hash(fileDir);
         }
     }
 
@@ -413,106 +1239,308 @@ public class Repo extends Utils implements Serializable {
         }
     }
 
+    /** Merge the branches BRANCHES into the current branch. Merging one
+     *  branch is a three-way merge; merging more makes a single commit
+     *  with a parent for each, as long as no file conflicts. */
+    public void merge(List<String> branches) {
+        if (branches.size() == 1) {
+            merge(branches.get(0));
+        } else {
+            octopusMerge(branches);
+        }
+    }
+
     /** Merge another branch with current branch BRANCH. */
     public void merge(String branch) {
         checkMergeCondition(branch);
         String splitPoint = getSplitPoint(branch);
+        if (splitPoint.equals(_branches.get(branch))) {
+            throw new GitletException(
+                    "Given branch is an ancestor of the current branch.");
+        }
+        if (splitPoint.equals(_branches.get(_curBranch))) {
+            revertWorkingFolder(_branches.get(branch));
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
         Commit splitCommit = getCommit(splitPoint);
         Commit givenBranch = getCommit(_branches.get(branch));
         Commit curBranch = getCommit(_branches.get(_curBranch));
         TreeSet<String> toBeDeleted = new TreeSet<String>();
         TreeSet<String> toBeCheckedOut = new TreeSet<String>();
         TreeSet<String> conflictFile = new TreeSet<String>();
-        if (splitPoint.equals(_branches.get(_curBranch))) {
-            throw new GitletException("Current branch fast-forwarded.");
-        }
-        if (splitPoint.equals(_branches.get(branch))) {
-            head = _branches.get(branch);
-            _branches.put(_curBranch, head);
-            headCache = getCommit(head);
-            throw new GitletException(
-                    "Given branch is an ancestor of the current branch.");
-        }
         firstMergeIterate(givenBranch, curBranch, splitCommit,
                 toBeCheckedOut, conflictFile);
         secondMergeIterate(givenBranch, curBranch, splitCommit,
                 toBeDeleted, conflictFile);
+        HashSet<String> needed = new HashSet<String>();
         for (String file : toBeCheckedOut) {
-            revertFile(givenBranch.getHash(), file); addFile(file);
+            if (inSparse(file)) {
+                needed.add(givenBranch.tracked(file));
+            }
+        }
+        for (String file : conflictFile) {
+            needed.add(splitCommit.tracked(file));
+            needed.add(curBranch.tracked(file));
+            needed.add(givenBranch.tracked(file));
+        }
+        ensureBlobs(needed);
+        for (String file : toBeCheckedOut) {
+            if (inSparse(file)) {
+                revertFile(givenBranch.getHash(), file);
+            }
+            _stagingArea.addFile(file, givenBranch.tracked(file));
         }
         for (String file : toBeDeleted) {
             removeFile(file);
         }
-        if (!conflictFile.isEmpty()) {
+        boolean conflicted = false;
+        for (String file : conflictFile) {
+            conflicted |= mergeFile(file, splitCommit.tracked(file),
+                    curBranch.tracked(file), givenBranch.tracked(file));
+            addFile(file);
+        }
+        if (conflicted) {
             System.out.println("Encountered a merge conflict.");
         }
-        for (String file : conflictFile) {
-            String first, second;
-            String givenFileHash = givenBranch.tracked(file);
-            String currentFileHash = curBranch.tracked(file);
-            if (!currentFileHash.equals("")) {
-                first = readContentsAsString(
-                        join(folder, currentFileHash));
-            } else {
-                first = "";
+        mergeCommit(String.format("Merged %s into %s.",
+                branch, _curBranch), List.of(branch));
+        ObjectWriter.drain();
+    }
+
+    /** Merge the branches BRANCHES into the current branch with one
+     *  commit. Each branch is merged in turn into a file tree held in
+     *  memory, against its best common ancestor with the current head
+     *  and the branches merged before it, so that each branch's tree is
+     *  compared once. Branches already contained in the head or in
+     *  another of BRANCHES are left out. If any file conflicts, nothing
+     *  is changed. */
+    private void octopusMerge(List<String> branches) {
+        String current = _branches.get(_curBranch);
+        MergeBase bases = new MergeBase(index(), shallow());
+        ArrayList<String> wanted = new ArrayList<String>();
+        for (String branch : new LinkedHashSet<String>(branches)) {
+            checkMergeCondition(branch);
+            if (!bases.isAncestor(_branches.get(branch), current)) {
+                wanted.add(branch);
             }
-            if (!givenFileHash.equals("")) {
-                second = readContentsAsString(
-                        join(folder, givenFileHash));
-            } else {
-                second = "";
+        }
+        ArrayList<String> merging = new ArrayList<String>();
+        for (int i = 0; i < wanted.size(); i += 1) {
+            String mine = _branches.get(wanted.get(i));
+            boolean contained = false;
+            for (int j = 0; j < wanted.size() && !contained; j += 1) {
+                String other = _branches.get(wanted.get(j));
+                contained = mine.equals(other) ? j < i
+                    : bases.isAncestor(mine, other);
+            }
+            if (!contained) {
+                merging.add(wanted.get(i));
             }
-            String third =
-                    "<<<<<<< HEAD\n" + first
-                            + "=======\n" + second + ">>>>>>>\n";
-            writeContents(join(myDirectory, file), third);
-            addFile(file);
         }
+        if (merging.isEmpty()) {
+            throw new GitletException(
+                    "Given branch is an ancestor of the current branch.");
+        } else if (merging.size() == 1) {
+            merge(merging.get(0));
+            return;
+        }
+        TreeMap<String, String> tree =
+            new TreeMap<String, String>(headCache.getTree());
+        HashMap<String, byte[]> contents = new HashMap<String, byte[]>();
+        ArrayList<String> merged = new ArrayList<String>(List.of(current));
+        for (String branch : merging) {
+            String theirs = _branches.get(branch);
+            mergeTree(branch, tree, contents,
+                    getCommit(mergeBase(theirs, merged)).getTree(),
+                    getCommit(theirs).getTree());
+            merged.add(theirs);
+        }
+        applyTree(tree, contents);
         mergeCommit(String.format("Merged %s into %s.",
-                branch, _curBranch), branch);
+                String.join(", ", merging), _curBranch), merging);
+        ObjectWriter.drain();
     }
 
-    /** Return split point of BRANCH with current branch. */
-    private String getSplitPoint(String branch) {
-        TreeSet<String> pathGivenBranch = new TreeSet<String>();
-        String first = _branches.get(branch);
-        while (first.length() != 0) {
-            Commit c = getCommit(first);
-            pathGivenBranch.add(first);
-            first = c.getParent();
+    /** Merge into TREE the changes BRANCH made from the file tree BASE to
+     *  its tree THEIRS. Files of TREE merged line by line are not stored:
+     *  CONTENTS holds them, and TREE their hashes. Throws GitletException
+     *  if a file conflicts. */
+    private void mergeTree(String branch, Map<String, String> tree,
+                           Map<String, byte[]> contents,
+                           Map<String, String> base,
+                           Map<String, String> theirs) {
+        TreeSet<String> files = new TreeSet<String>(theirs.keySet());
+        files.addAll(base.keySet());
+        for (String file : files) {
+            String b = base.getOrDefault(file, "");
+            String t = theirs.getOrDefault(file, "");
+            String o = tree.getOrDefault(file, "");
+            if (t.equals(b) || t.equals(o)) {
+                continue;
+            } else if (o.equals(b)) {
+                contents.remove(file);
+                if (t.length() == 0) {
+                    tree.remove(file);
+                } else {
+                    tree.put(file, t);
+                }
+                continue;
+            }
+            byte[] result = o.length() == 0 || t.length() == 0 ? null
+                : mergeContents(b, contents.get(file), o, t);
+            if (result == null) {
+                throw new GitletException(String.format(
+                        "Merging %s conflicts in %s; merge the branches"
+                        + " one at a time.", branch, file));
+            }
+            contents.put(file, result);
+            tree.put(file, sha1(result));
         }
-        first = _branches.get(_curBranch);
-        while (first.length() != 0) {
-            Commit c = getCommit(first);
-            if (pathGivenBranch.contains(first)) {
-                return first;
+    }
+
+    /** Return the line-level merge of blobs BASE, OURS and THEIRS, or
+     *  null if it conflicts. MERGED, if not null, is the contents of
+     *  OURS. */
+    private byte[] mergeContents(String base, byte[] merged, String ours,
+                                 String theirs) {
+        ensureBlobs(merged == null ? List.of(base, ours, theirs)
+                    : List.of(base, theirs));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            MappedLines mine = merged == null ? blobLines(ours)
+                : new MappedLines(ByteBuffer.wrap(merged));
+            if (Merge3.merge(blobLines(base), mine, blobLines(theirs), out)) {
+                return null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Make the working folder and staging area hold TREE in place of
+     *  the head's files, writing the files in CONTENTS from memory and
+     *  the others only if they are in the sparse checkout. Nothing is
+     *  changed if an untracked file is in the way. */
+    private void applyTree(Map<String, String> tree,
+                           Map<String, byte[]> contents) {
+        Map<String, String> old = headCache.getTree();
+        TreeSet<String> changed = new TreeSet<String>(tree.keySet());
+        changed.addAll(old.keySet());
+        changed.removeIf(f -> tree.getOrDefault(f, "")
+                         .equals(old.getOrDefault(f, "")));
+        HashSet<String> needed = new HashSet<String>();
+        for (String file : changed) {
+            if (!old.containsKey(file) && join(myDirectory, file).exists()) {
+                throw new GitletException(
+                        "There is an untracked file in the way;"
+                                + " delete it or add it first.");
+            } else if (tree.containsKey(file) && !contents.containsKey(file)
+                    && inSparse(file)) {
+                needed.add(tree.get(file));
+            }
+        }
+        ensureBlobs(needed);
+        for (String file : changed) {
+            if (!tree.containsKey(file)) {
+                removeFile(file);
+            } else if (contents.containsKey(file)) {
+                WorkTree.makeParents(myDirectory, file);
+                writeContents(join(myDirectory, file), contents.get(file));
+                addFile(file);
+            } else {
+                if (inSparse(file)) {
+                    extractFile(file, tree.get(file));
+                }
+                _stagingArea.addFile(file, tree.get(file));
             }
-            first = c.getParent();
         }
-        return "NOT FOUND";
+    }
+
+    /** Write to FILE the line-level merge of blobs OURS and THEIRS
+     *  against their split point blob BASE. An empty hash stands for an
+     *  absent file. Return true iff the result has a conflict. */
+    private boolean mergeFile(String file, String base, String ours,
+                              String theirs) {
+        File output = join(myDirectory, file);
+        WorkTree.makeParents(myDirectory, file);
+        try (BufferedOutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(output.toPath()), OUTPUT_BUFFER)) {
+            return Merge3.merge(blobLines(base), blobLines(ours),
+                    blobLines(theirs), out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the lines of the blob HASH, or no lines if HASH is
+     *  empty. */
+    private MappedLines blobLines(String hash) {
+        if (hash.length() == 0) {
+            return new MappedLines();
+        }
+        return MappedLines.map(Blobs.file(folder, hash));
+    }
+
+    /** Return split point of BRANCH with current branch: their newest
+     *  best common ancestor, over all parents. After criss-cross merges
+     *  there may be several equally good ones. */
+    private String getSplitPoint(String branch) {
+        return mergeBase(_branches.get(branch),
+                List.of(_branches.get(_curBranch)));
+    }
+
+    /** Return the newest best common ancestor of commit ONE and any of
+     *  the commits OTHERS. The walks stop at shallow commits, whose
+     *  parents are not here. */
+    private String mergeBase(String one, Collection<String> others) {
+        List<String> bases =
+            new MergeBase(index(), shallow()).bases(one, others);
+        if (!bases.isEmpty()) {
+            return bases.get(0);
+        } else if (!shallow().isEmpty()) {
+            throw new GitletException("No split point in the fetched history;"
+                    + " fetch with a greater depth.");
+        }
+        throw new GitletException("The branches share no history.");
     }
 
     /** Find commmit with specific message MESSAGE. */
     public void doFind(String message) {
-        Boolean find = false;
-        for (HashMap.Entry<String, String> e : _commitToMessage.entrySet()) {
-            String c = e.getKey();
-            String m = e.getValue();
-            if (m.equals(message)) {
-                System.out.println(c);
-                find = true;
+        TreeSet<String> found = new TreeSet<String>();
+        for (CommitInfo c : index().all()) {
+            if (c.getMessage().equals(message)) {
+                found.add(c.getHash());
             }
         }
-        if (!find) {
+        if (found.isEmpty()) {
             throw new GitletException("Found no commit with that message.");
         }
+        for (String c : found) {
+            System.out.println(c);
+        }
+    }
+
+    /** Return the commit metadata index, opening it on first use and
+     *  adding any commits it is missing. */
+    CommitIndex index() {
+        if (_index == null) {
+            _index = CommitIndex.open(folder);
+            for (ObjectId id : commitList) {
+                if (!_index.contains(id.toHex())) {
+                    _index.add(getCommit(id.toHex()));
+                }
+            }
+        }
+        return _index;
     }
 
     /** Convert short UID ID back to full length, return the result. */
     public String convertID(String id) {
-        for (String c : commitList) {
-            if (c.startsWith(id)) {
-                return c;
+        for (ObjectId c : commitList) {
+            if (c.toHex().startsWith(id)) {
+                return c.toHex();
             }
         }
         return "";
@@ -531,29 +1559,184 @@ public class Repo extends Utils implements Serializable {
      */
     /** Fetch the remote branch BRANCH from remote name NAME. */
     public void fetchBranch(String name, String branch) {
+        fetchBranch(name, branch, Integer.MAX_VALUE, true);
+    }
+
+    /** Fetch the remote branch BRANCH from remote name NAME, copying only
+     *  the commits fewer than DEPTH parent links from its head. Their
+     *  blobs are copied if BLOBS; otherwise NAME becomes a promisor
+     *  remote, from which blobs are fetched when they are needed. */
+    public void fetchBranch(String name, String branch, int depth,
+                            boolean blobs) {
         File fileName = _remoteDir.get(name);
         if (!fileName.exists()) {
             throw new GitletException("Remote directory not found.");
         }
         File remoteObjectDir = fileName;
+        RepoLock remoteLock = RepoLock.acquire(remoteObjectDir, true);
+        try {
+            fetchLocked(name, branch, remoteObjectDir, depth, blobs);
+        } finally {
+            remoteLock.release();
+        }
+    }
+
+    /** Fetch BRANCH of remote NAME, whose objects are in REMOTEOBJECTDIR
+     *  and which is locked for reading, to depth DEPTH. The walk follows
+     *  every parent, breadth first, and stops at commits already held,
+     *  unless some history is shallow: then it passes through held
+     *  commits, using only the index, to deepen the shallow ones.
+     *  Commits copied at the depth limit, or whose parents the remote
+     *  lacks, are recorded as shallow; a commit held before keeps its
+     *  parents and stays as it was. Blobs are copied only if BLOBS. */
+    private void fetchLocked(String name, String branch,
+                             File remoteObjectDir, int depth,
+                             boolean blobs) {
         Repo remoteRepo =
                 readObject(join(remoteObjectDir, "GITLET"), Repo.class);
         String remoteBranchHead = remoteRepo.branch2hash(branch);
         if (remoteBranchHead == null) {
             throw new GitletException("That remote does not have that branch.");
         }
-        String first = remoteRepo.branch2hash(branch);
-        while (first.length() != 0) {
-            byte[] blob =
-                    readContents(join(remoteObjectDir, first));
-            File outputDir = join(folder, first);
-            writeContents(outputDir, blob);
-            commitList.add(first);
-            remoteRepo.moveAllBlobs(first, folder);
-            first = remoteRepo.getCommit(first).getParent();
+        HashMap<String, Integer> level = new HashMap<String, Integer>();
+        ArrayDeque<String> work = new ArrayDeque<String>();
+        level.put(remoteBranchHead, 1);
+        work.add(remoteBranchHead);
+        while (!work.isEmpty()) {
+            String first = work.poll();
+            boolean copied = !hasCommit(first);
+            if (copied) {
+                File outputDir = join(folder, first);
+                transfer(join(remoteObjectDir, first), outputDir);
+                commitList.add(ObjectId.fromHex(first));
+                index().add(readObject(WriteBatch.current(outputDir),
+                        Commit.class));
+                if (blobs) {
+                    remoteRepo.moveAllBlobs(first, folder);
+                }
+            } else if (shallow().isEmpty()) {
+                continue;
+            }
+            String[] parents = index().get(first).getParents();
+            if (level.get(first) >= depth
+                    || remoteRepo.shallow().contains(first)) {
+                if (copied && parents.length > 0) {
+                    shallow().add(first);
+                }
+                continue;
+            }
+            shallow().remove(first);
+            for (String p : parents) {
+                if (!level.containsKey(p)) {
+                    level.put(p, level.get(first) + 1);
+                    work.add(p);
+                }
+            }
+        }
+        for (String c : level.keySet()) {
+            if (!shallow().contains(c)) {
+                addPathFilter(pathFilters(), folder, c);
+            }
         }
         String newBranchName = String.format("%s/%s", name, branch);
         _branches.put(newBranchName, remoteBranchHead);
+        extendBitmaps(remoteBranchHead);
+        if (!blobs) {
+            promisors().add(name);
+        }
+    }
+
+    /** Make sure that the blobs HASHES are present, fetching any that
+     *  are missing from the promisor remotes. Each remote is locked once
+     *  for the whole batch and its blobs copied in parallel. The remote
+     *  whose objects are in LOCKED, if not null, is already locked by
+     *  this process and is not asked. A shared lock on this repository,
+     *  as read-only commands take, is made exclusive before anything is
+     *  fetched, and what is fetched is flushed, as such commands save no
+     *  state. Throws a GitletException if a blob cannot be found. */
+    private void ensureBlobs(Collection<String> hashes, File locked) {
+        Set<String> missing = ConcurrentHashMap.newKeySet();
+        for (String hash : hashes) {
+            if (hash.length() != 0
+                    && !WriteBatch.exists(join(folder, hash))) {
+                missing.add(hash);
+            }
+        }
+        if (!missing.isEmpty() && !promisors().isEmpty()) {
+            RepoLock.upgrade(folder);
+            missing.removeIf(h -> WriteBatch.exists(join(folder, h)));
+        }
+        for (String remote : promisors()) {
+            File dir = _remoteDir.get(remote);
+            if (missing.isEmpty()) {
+                break;
+            } else if (dir == null || !dir.exists() || dir.equals(locked)) {
+                continue;
+            }
+            RepoLock lock = RepoLock.acquire(dir, true);
+            try {
+                new ArrayList<String>(missing).parallelStream()
+                    .filter(h -> copyBlob(dir, folder, h))
+                    .forEach(missing::remove);
+            } finally {
+                lock.release();
+            }
+            WriteBatch.flush();
+        }
+        if (!missing.isEmpty()) {
+            throw new GitletException(String.format(
+                "Blob %s is missing and no remote has it.",
+                missing.iterator().next()));
+        }
+    }
+
+    /** Make sure that the blobs HASHES are present, fetching any that
+     *  are missing from the promisor remotes. */
+    private void ensureBlobs(Collection<String> hashes) {
+        ensureBlobs(hashes, null);
+    }
+
+    /** Copy blob HASH, with any chunks TO lacks, from object folder FROM
+     *  to object folder TO. Return false if FROM does not have it. */
+    private static boolean copyBlob(File from, File to, String hash) {
+        File blob = WriteBatch.current(join(from, hash));
+        if (!blob.isFile()) {
+            return false;
+        }
+        transfer(blob, join(to, hash));
+        for (String chunk : Blobs.chunks(from, hash)) {
+            if (!WriteBatch.exists(join(to, chunk))) {
+                transfer(join(from, chunk), join(to, chunk));
+            }
+        }
+        return true;
+    }
+
+    /** Copy the object FROM of one repository to the object TO of
+     *  another, counting the bytes copied. */
+    private static void transfer(File from, File to) {
+        byte[] data = readContents(WriteBatch.current(from));
+        WriteBatch.write(to, data);
+        Metrics.objectWritten();
+        Metrics.transferred(data.length);
+    }
+
+    /** Return the names of the remotes that promise to supply blobs
+     *  left out by partial fetches. */
+    private Set<String> promisors() {
+        if (_promisors == null) {
+            _promisors = new TreeSet<String>();
+        }
+        return _promisors;
+    }
+
+    /** Return the shallow commits: those whose parents were not fetched
+     *  because of a depth limit. */
+    private Set<String> shallow() {
+        if (_shallow == null) {
+            _shallow = new TreeSet<String>();
+        }
+        return _shallow;
     }
 
     /** Pull the remote branch BRANCH from remote name NAME. */
@@ -570,44 +1753,70 @@ public class Repo extends Utils implements Serializable {
             throw new GitletException("Remote directory not found.");
         }
         File remoteObjectDir = join(fileName);
+        RepoLock remoteLock = RepoLock.acquire(remoteObjectDir, false);
+        try {
+            pushLocked(branch, remoteObjectDir);
+        } finally {
+            remoteLock.release();
+        }
+    }
+
+    /** Push the current branch into BRANCH of the remote whose objects
+     *  are in REMOTEOBJECTDIR and which is locked for writing. */
+    private void pushLocked(String branch, File remoteObjectDir) {
         Repo remoteRepo
                 = readObject(join(remoteObjectDir, "GITLET"), Repo.class);
         String remoteBranchHead = remoteRepo.branch2hash(branch);
-        TreeSet<String> diffCommits = new TreeSet<String>();
-        Boolean b = false;
-        for (String first = _branches.get(_curBranch); !first.equals("");
-             first = getCommit(first).getParent()) {
-            diffCommits.add(first);
-            if (first.equals(remoteBranchHead)) {
-                b = true;
-                break;
-            }
-        }
-        if (!b) {
+        ObjectIds ids = objectIds();
+        Bitmap ours = reachable(List.of(_branches.get(_curBranch)));
+        if (remoteBranchHead == null || !index().contains(remoteBranchHead)
+                || !ours.contains(ids.id(remoteBranchHead))) {
             throw new GitletException(
                             " Please pull down remote changes before pushing.");
         }
+        Bitmap missing = ours.andNot(reachable(List.of(remoteBranchHead)));
+        TreeSet<String> diffCommits = new TreeSet<String>();
+        HashSet<String> needed = new HashSet<String>();
+        missing.forEach(i -> {
+            String hash = ids.hash(i);
+            if (index().contains(hash)) {
+                diffCommits.add(hash);
+            } else if (!WriteBatch.exists(join(remoteObjectDir, hash))) {
+                needed.add(hash);
+            }
+        });
+        ensureBlobs(needed, remoteObjectDir);
+        File absObjectFolder = join(absPath, ".gitlet");
+        needed.parallelStream().forEach(
+            blob -> copyBlob(absObjectFolder, remoteObjectDir, blob));
+        CommitIndex remoteIndex = CommitIndex.open(remoteObjectDir);
+        for (String commit : diffCommits) {
+            remoteIndex.add(getCommit(commit));
+            transfer(join(folder, commit), join(remoteObjectDir, commit));
+            remoteRepo.commitList.add(ObjectId.fromHex(commit));
+        }
+        PathFilters remoteFilters = PathFilters.open(remoteObjectDir);
         for (String commit : diffCommits) {
-            byte[] blob =
-                    readContents(join(folder, commit));
-            File outputDir = join(remoteObjectDir, commit);
-            writeContents(outputDir, blob);
-            moveAllBlobs(commit, remoteObjectDir);
-            remoteRepo.commitList.add(commit);
+            if (!shallow().contains(commit)) {
+                addPathFilter(remoteFilters, remoteObjectDir, commit);
+            }
         }
         remoteRepo.dangerousReset(_branches.get(_curBranch));
-        writeObject(join(remoteObjectDir, "GITLET"), remoteRepo);
+        WriteBatch.commitState(join(remoteObjectDir, "GITLET"), remoteRepo);
     }
 
     /** Move all blobs involved in current repo's COMMIT
-     *  to another folder OUTPUTDIR. */
+     *  to another folder OUTPUTDIR, unless it already has them. The
+     *  chunks of a chunked blob are copied only if OUTPUTDIR lacks
+     *  them. */
     private void moveAllBlobs(String commit, File outputDir) {
         File absObjectFolder = join(absPath, ".gitlet");
-        for (String file : getCommit(commit).getKeys()) {
-            String hash = getCommit(commit).tracked(file);
-            byte[] blob
-                    = readContents(join(absObjectFolder, hash));
-            writeContents(join(outputDir, hash), blob);
+        for (String hash : getCommit(commit).getTree().values()) {
+            if (!WriteBatch.exists(join(outputDir, hash))
+                    && !copyBlob(absObjectFolder, outputDir, hash)) {
+                throw new GitletException(String.format(
+                    "Blob %s is missing and no remote has it.", hash));
+            }
         }
     }
 
@@ -627,15 +1836,271 @@ public class Repo extends Utils implements Serializable {
                     "A remote with that name does not exist.");
         } else {
             _remoteDir.remove(name);
+            promisors().remove(name);
+        }
+    }
+
+    /**
+     * ******************
+     * Start maintenance part.
+     * ******************
+     */
+    /** Delete every object that cannot be reached from a branch head or
+     *  the staging area and was last modified more than GRACE
+     *  milliseconds ago, and report the space reclaimed. Temporary files
+     *  left by interrupted writes are removed after the same grace. */
+    public void gc(long grace) {
+        long[] pruned = prune(folder, markReachable(),
+                System.currentTimeMillis() - grace);
+        int commits = commitList.size();
+        commitList.removeIf(c -> !join(folder, c.toHex()).exists());
+        if (commitList.size() < commits) {
+            join(folder, BlameCache.NAME).delete();
+        }
+        index().retain(commitList);
+        pathFilters().retain(commitList);
+        writeBitmaps();
+        System.out.printf("Removed %d objects, reclaimed %d bytes.%n",
+                pruned[0], pruned[1]);
+    }
+
+    /** Delete from object directory DIR every object not in LIVE, and
+     *  every temporary file, last modified before time CUTOFF in
+     *  milliseconds. Return the number of files deleted and the bytes
+     *  they held. */
+    static long[] prune(File dir, Set<ObjectId> live, long cutoff) {
+        AtomicLong removed = new AtomicLong();
+        AtomicLong reclaimed = new AtomicLong();
+        plainFilenamesIn(dir).parallelStream()
+            .filter(name -> (isObjectName(name)
+                             && !live.contains(ObjectId.fromHex(name)))
+                    || WriteBatch.isTemporary(name))
+            .forEach(name -> {
+                File obj = join(dir, name);
+                long size = obj.length();
+                if (obj.lastModified() < cutoff && obj.delete()) {
+                    removed.incrementAndGet();
+                    reclaimed.addAndGet(size);
+                }
+            });
+        return new long[] {removed.get(), reclaimed.get()};
+    }
+
+    /** Check the integrity of the object store and print the problems
+     *  found. If QUICK, only objects reachable from a branch head or the
+     *  staging area are checked. */
+    public void fsck(boolean quick) {
+        TreeSet<String> heads = new TreeSet<String>(_branches.values());
+        heads.add(head);
+        Fsck check = new Fsck(folder, heads,
+                _stagingArea.getTree().values(), commitHashes(), shallow(),
+                !promisors().isEmpty());
+        List<String> problems = check.run(quick);
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        System.out.printf("Checked %d objects, found %d problems.%n",
+                check.checked(), problems.size());
+    }
+
+    /** Return the hashes of the commits reachable from any branch head,
+     *  following both parents, together with the blobs that they and
+     *  the staging area refer to and the chunks of those blobs. */
+    private Set<ObjectId> markReachable() {
+        ArrayList<String> starts = new ArrayList<String>(_branches.values());
+        starts.add(head);
+        ObjectIds ids = objectIds();
+        ArrayList<String> objects =
+            new ArrayList<String>(_stagingArea.getTree().values());
+        reachable(starts).forEach(i -> objects.add(ids.hash(i)));
+        Set<ObjectId> live = ConcurrentHashMap.newKeySet();
+        objects.parallelStream().forEach(obj -> {
+            live.add(ObjectId.fromHex(obj));
+            for (String chunk : Blobs.chunks(folder, obj)) {
+                live.add(ObjectId.fromHex(chunk));
+            }
+        });
+        return live;
+    }
+
+    /** Return the numbers of the commits reachable from the commits
+     *  STARTS, following every parent, and of the blobs their trees
+     *  refer to. Where a commit has a stored bitmap, it is used in place
+     *  of the walk below that commit. */
+    private Bitmap reachable(Collection<String> starts) {
+        ObjectIds ids = objectIds();
+        Bitmap result = new Bitmap();
+        ArrayDeque<String> work = new ArrayDeque<String>(starts);
+        while (!work.isEmpty()) {
+            String c = work.pop();
+            if (!index().contains(c) || result.contains(ids.id(c))) {
+                continue;
+            }
+            Bitmap stored = bitmaps().get(c);
+            if (stored != null) {
+                result.or(stored);
+                continue;
+            }
+            result.add(ids.id(c));
+            for (String blob : getCommit(c).getTree().values()) {
+                result.add(ids.id(blob));
+            }
+            if (!shallow().contains(c)) {
+                for (String parent : index().get(c).getParents()) {
+                    work.push(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Store reachability bitmaps for the branch heads and for every
+     *  BITMAP_SPACING-th other commit, so that later walks stop within
+     *  a few commits of where they start. Shallow history gets none,
+     *  since its walks are cut short. */
+    private void writeBitmaps() {
+        HashSet<String> heads = new HashSet<String>(_branches.values());
+        heads.add(head);
+        _bitmaps = new BitmapIndex();
+        int n = 0;
+        for (CommitInfo c : shallow().isEmpty() ? index().all()
+                 : new ArrayList<CommitInfo>()) {
+            if (heads.contains(c.getHash()) || n % BITMAP_SPACING == 0) {
+                _bitmaps.put(c.getHash(), reachable(List.of(c.getHash())));
+            }
+            n += 1;
         }
+        objectIds().save();
+        _bitmaps.write(folder, objectIds());
     }
 
+    /** Store a reachability bitmap for COMMIT, a new branch head, if a
+     *  walk from it would pass more than BITMAP_SPACING commits before
+     *  stopping at stored bitmaps, so that walks from new heads stay as
+     *  short between gcs as just after one. As with gc, shallow history
+     *  gets none. */
+    private void extendBitmaps(String commit) {
+        if (!shallow().isEmpty()) {
+            return;
+        }
+        HashSet<String> passed = new HashSet<String>();
+        ArrayDeque<String> work = new ArrayDeque<String>();
+        work.push(commit);
+        while (!work.isEmpty() && passed.size() <= BITMAP_SPACING) {
+            String c = work.pop();
+            if (index().contains(c) && bitmaps().get(c) == null
+                    && passed.add(c)) {
+                for (String parent : index().get(c).getParents()) {
+                    work.push(parent);
+                }
+            }
+        }
+        if (passed.size() > BITMAP_SPACING) {
+            bitmaps().put(commit, reachable(List.of(commit)));
+            objectIds().save();
+            bitmaps().write(folder, objectIds());
+        }
+    }
+
+    /** Return the numbering of objects, reading it on first use. */
+    private ObjectIds objectIds() {
+        if (_ids == null) {
+            _ids = ObjectIds.open(folder);
+        }
+        return _ids;
+    }
+
+    /** Return the stored reachability bitmaps, reading them on first
+     *  use. */
+    private BitmapIndex bitmaps() {
+        if (_bitmaps == null) {
+            _bitmaps = BitmapIndex.open(folder, objectIds());
+        }
+        return _bitmaps;
+    }
+
+    /** Return the changed-path filters, reading them on first use. */
+    private PathFilters pathFilters() {
+        if (_filters == null) {
+            _filters = PathFilters.open(folder);
+        }
+        return _filters;
+    }
+
+    /** Add to FILTERS, for the objects in DIR, the filter of COMMIT
+     *  unless it has one. */
+    private static void addPathFilter(PathFilters filters, File dir,
+                                      String commit) {
+        if (filters.contains(commit)) {
+            return;
+        }
+        Commit c = readObject(WriteBatch.current(join(dir, commit)),
+                Commit.class);
+        Map<String, String> parent = c.getParent().length() == 0
+            ? new HashMap<String, String>()
+            : readObject(WriteBatch.current(join(dir, c.getParent())),
+                    Commit.class).getTree();
+        filters.add(commit, c.getTree(), parent);
+    }
+
+    /** Read this repository's state from IN, upgrading that written by
+     *  older versions: their commit list held hex hashes, and their map
+     *  of commit messages is dropped, since the commit index is rebuilt
+     *  from the commits themselves on first use. Fields they lacked are
+     *  left null and filled in by their accessors. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        myDirectory = (File) f.get("myDirectory", null);
+        folder = (File) f.get("folder", null);
+        commitList = new LinkedHashSet<ObjectId>();
+        for (Object c : (Collection<Object>) f.get("commitList", null)) {
+            commitList.add(c instanceof ObjectId ? (ObjectId) c
+                           : ObjectId.fromHex((String) c));
+        }
+        _stagingArea = (Staging) f.get("_stagingArea", null);
+        head = (String) f.get("head", null);
+        headCache = (Commit) f.get("headCache", null);
+        _branches = (TreeMap<String, String>) f.get("_branches", null);
+        _curBranch = (String) f.get("_curBranch", null);
+        _shallow = (TreeSet<String>) f.get("_shallow", null);
+        _promisors = (TreeSet<String>) f.get("_promisors", null);
+        _upstreams = (TreeMap<String, String>) f.get("_upstreams", null);
+        _sparse = (TreeSet<String>) f.get("_sparse", null);
+        _remoteDir = (TreeMap<String, File>) f.get("_remoteDir", null);
+        absPath = (File) f.get("absPath", null);
+    }
+
+    /** Name of the remote a clone is made from. */
+    private static final String ORIGIN = "origin";
+    /** Digits of the commit hashes shown by blame. */
+    private static final int BLAME_ABBREV = 8;
+    /** Width of the line numbers shown by blame. */
+    private static final int BLAME_WIDTH = 4;
+    /** Commits between stored bitmaps, in index order. */
+    private static final int BITMAP_SPACING = 32;
+    /** Size of the buffer for long command output. */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    /** Most commits kept by getCommit. */
+    private static final int COMMIT_CACHE_SIZE = 256;
+    /** Load factor of the commit cache. */
+    private static final float LOAD_FACTOR = 0.75f;
+    /** Number of log entries printed between flushes. */
+    private static final int LOG_PAGE = 20;
+
+    /** Pinned to the value computed for the original form of this
+     *  class, so that repositories it wrote still read; readObject
+     *  upgrades their state. */
+    private static final long serialVersionUID = 6092978304786203800L;
+
     /** Store the current working folder. */
     private File myDirectory;
     /** Store the folder for objects. */
     private File folder;
-    /** Store all the commitList in this folder, store the hash. */
-    private List<String> commitList;
+    /** Hashes of all the commits in this folder, in the order they were
+     *  added. */
+    private LinkedHashSet<ObjectId> commitList;
     /** Current Staging Area. */
     private Staging _stagingArea;
     /** Newest commit. */
@@ -646,8 +2111,37 @@ public class Repo extends Utils implements Serializable {
     private TreeMap<String, String> _branches;
     /** Current branch name. */
     private String _curBranch;
-    /** Store commit-message pair. */
-    private TreeMap<String, String> _commitToMessage;
+    /** Commit metadata index, opened on first use. */
+    private transient CommitIndex _index;
+    /** Recently read commits, by hash, least recently used first. */
+    private transient LinkedHashMap<String, Commit> _commits;
+    /** Numbering of objects for bitmaps, opened on first use. */
+    private transient ObjectIds _ids;
+    /** Stored reachability bitmaps, read on first use. */
+    private transient BitmapIndex _bitmaps;
+    /** Changed-path filters of commits, read on first use. */
+    private transient PathFilters _filters;
+    /** Rules of the files to leave out of scans, once loaded. */
+    private transient Ignore _ignore;
+    /** Watcher of the working folder, if it is watched. */
+    private transient DirtySet _watcher;
+    /** Plain files in the working folder as of the last refresh. */
+    private transient TreeSet<String> _workingFiles;
+    /** Hashes of working files that have not changed since they were
+     *  last hashed. */
+    private transient HashMap<String, String> _workingHashes;
+    /** Shallow commits, whose parents were left out by a fetch with a
+     *  depth limit. */
+    private TreeSet<String> _shallow;
+    /** Remotes that supply blobs left out by partial fetches. */
+    private TreeSet<String> _promisors;
+    /** The upstream branch of each branch that tracks one. */
+    private TreeMap<String, String> _upstreams;
+    /** Folders of the sparse checkout, or null if every file is checked
+     *  out. */
+    private TreeSet<String> _sparse;
+    /** The cone of _sparse, made on first use. */
+    private transient Sparse _cone;
     /** Store remote dir. */
     private TreeMap<String, File> _remoteDir;
     /** Store absoloute path. */
@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A lock on a repository, held on the file .gitlet/lock. Any number of
+ * processes may hold shared locks to read the repository at once, while
+ * a process that changes it holds the lock exclusively. A shared lock
+ * may be made exclusive when a read turns out to need to add objects,
+ * as when fetching blobs a partial fetch left out. Waiting for the
+ * lock is bounded; the wait in milliseconds may be set with the system
+ * property gitlet.lockTimeout.
+ *  @author Tiffany Kim */
+
+class RepoLock {
+
+    /** A lock LOCK on the file KEY held through channel CHANNEL. */
+    private RepoLock(Path key, FileChannel channel, FileLock lock) {
+        _key = key;
+        _channel = channel;
+        _lock = lock;
+    }
+
+    /** Return a lock on the repository whose objects are in DIR, shared
+     *  if SHARED and otherwise exclusive, waiting at most the configured
+     *  time for it. Throws a GitletException if the wait times out. */
+    static RepoLock acquire(File dir, boolean shared) {
+        Path key = keyOf(dir);
+        try {
+            FileChannel ch = FileChannel.open(key, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = waitFor(ch, shared);
+            } catch (GitletException excp) {
+                ch.close();
+                throw excp;
+            }
+            if (shared) {
+                _shared = true;
+            } else {
+                _exclusive = true;
+            }
+            RepoLock result = new RepoLock(key, ch, lock);
+            HELD.put(key, result);
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Make the lock this process holds on the repository whose objects
+     *  are in DIR exclusive, if it is shared, so that objects may be
+     *  added to it. The shared lock is let go while waiting, so other
+     *  processes may change the repository meanwhile; readOnly is
+     *  unchanged, and caches built from what was read are still not
+     *  written. Throws a GitletException if the wait times out. */
+    static void upgrade(File dir) {
+        RepoLock held = HELD.get(keyOf(dir));
+        if (held == null || !held._lock.isShared()) {
+            return;
+        }
+        try {
+            held._lock.release();
+            held._lock = waitFor(held._channel, false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a lock on all of the file open on CH, shared if SHARED,
+     *  waiting at most the configured time for it. Throws a
+     *  GitletException if the wait times out. */
+    private static FileLock waitFor(FileChannel ch, boolean shared)
+        throws IOException {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeout();
+        long pause = MIN_PAUSE;
+        try {
+            while (true) {
+                FileLock lock = ch.tryLock(0, Long.MAX_VALUE, shared);
+                if (lock != null) {
+                    Metrics.lockTaken(System.nanoTime() - start);
+                    return lock;
+                }
+                long now = System.currentTimeMillis();
+                if (now >= deadline) {
+                    throw new GitletException(
+                        "Timed out waiting for another gitlet process"
+                        + " to finish with the repository.");
+                }
+                Thread.sleep(Math.min(pause, deadline - now));
+                pause = Math.min(2 * pause, MAX_PAUSE);
+            }
+        } catch (InterruptedException excp) {
+            throw new GitletException("Interrupted waiting for the lock.");
+        }
+    }
+
+    /** Release the lock. */
+    void release() {
+        HELD.remove(_key, this);
+        try {
+            _lock.release();
+            _channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff this process holds the lock on the repository
+     *  whose objects are in DIR exclusively. */
+    static boolean exclusive(File dir) {
+        RepoLock held = HELD.get(keyOf(dir));
+        return held != null && !held._lock.isShared();
+    }
+
+    /** Return true iff this process has only taken shared locks, and so
+     *  must not change repository files. */
+    static boolean readOnly() {
+        return _shared && !_exclusive;
+    }
+
+    /** Return the lock file of the repository whose objects are in DIR,
+     *  named the same way however DIR is given. */
+    private static Path keyOf(File dir) {
+        return new File(dir, NAME).toPath().toAbsolutePath().normalize();
+    }
+
+    /** Return the longest time to wait for a lock, in milliseconds. */
+    private static long timeout() {
+        return Long.getLong("gitlet.lockTimeout", DEFAULT_TIMEOUT);
+    }
+
+    /** Name of the lock file. */
+    static final String NAME = "lock";
+    /** Default longest wait for a lock, in milliseconds. */
+    private static final long DEFAULT_TIMEOUT = 10000;
+    /** First pause between attempts, in milliseconds. */
+    private static final long MIN_PAUSE = 5;
+    /** Longest pause between attempts, in milliseconds. */
+    private static final long MAX_PAUSE = 200;
+
+    /** True iff this process has taken a shared lock. */
+    private static boolean _shared;
+    /** True iff this process has taken an exclusive lock. */
+    private static boolean _exclusive;
+
+    /** Locks held by this process, by lock file. */
+    private static final Map<Path, RepoLock> HELD =
+        new ConcurrentHashMap<Path, RepoLock>();
+
+    /** Lock file. */
+    private final Path _key;
+    /** Channel of the lock file. */
+    private final FileChannel _channel;
+    /** The lock held. */
+    private FileLock _lock;
+}
@@ -0,0 +1,44 @@
+package gitlet;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * The part of the file tree kept in a sparse working folder, given as a
+ * cone of folders. The files directly in the root are always kept, as
+ * is every file under a listed folder. A walk of the working folder
+ * enters only the listed folders, the folders under them, and the
+ * folders that lead to them, so it costs no more than the files kept.
+ * Commits still hold the whole tree; only the working folder is sparse.
+ *  @author Tiffany Kim */
+
+class Sparse {
+
+    /** The cone of the folders FOLDERS, named as in trees. */
+    Sparse(Collection<String> folders) {
+        _folders = new TreeSet<String>(folders);
+    }
+
+    /** Return true iff file PATH is kept in the working folder. */
+    boolean includes(String path) {
+        for (int end = path.indexOf('/'); end >= 0;
+             end = path.indexOf('/', end + 1)) {
+            if (_folders.contains(path.substring(0, end))) {
+                return true;
+            }
+        }
+        return path.indexOf('/') < 0;
+    }
+
+    /** Return true iff folder PATH may hold files that are kept. */
+    boolean enters(String path) {
+        if (includes(path + "/")) {
+            return true;
+        }
+        String next = _folders.ceiling(path + "/");
+        return next != null && next.startsWith(path + "/");
+    }
+
+    /** The listed folders. */
+    private final TreeSet<String> _folders;
+}
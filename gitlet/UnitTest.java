@@ -2,7 +2,22 @@ package gitlet;
 
 import ucb.junit.textui;
 import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import javax.management.JMX;
 import static org.junit.Assert.*;
 
 /** The suite of all JUnit tests for the gitlet package.
@@ -23,6 +38,512 @@ public class UnitTest {
         File staging = new File(".gitlet");
         assertEquals(staging.listFiles().length, 2);
     }
-}
 
+    /** Return the lines of S. */
+    private static MappedLines lines(String s) {
+        return new MappedLines(
+            ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Checks that diff finds a minimal set of line edits. */
+    @Test
+    public void diffTest() {
+        List<Diff.Edit> edits =
+            Diff.edits(lines("a\nb\nc\nd\n"), lines("a\nc\nd\ne"));
+        assertEquals(2, edits.size());
+        assertEquals(1, edits.get(0).aStart);
+        assertEquals(2, edits.get(0).aEnd);
+        assertEquals(1, edits.get(0).bStart);
+        assertEquals(1, edits.get(0).bEnd);
+        assertEquals(4, edits.get(1).aStart);
+        assertEquals(3, edits.get(1).bStart);
+        assertEquals(4, edits.get(1).bEnd);
+        assertTrue(Diff.edits(lines("x\ny"), lines("x\ny")).isEmpty());
+    }
+
+    /** Checks that separate edits merge cleanly and overlapping edits
+     *  conflict. */
+    @Test
+    public void mergeTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(Merge3.merge(lines("a\nb\nc\nd\n"),
+                lines("A\nb\nc\nd\n"), lines("a\nb\nc\nD\n"), out));
+        assertEquals("A\nb\nc\nD\n", out.toString());
+        out.reset();
+        assertTrue(Merge3.merge(lines("a\nb\n"), lines("x\nb\n"),
+                lines("y\nb\n"), out));
+        assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\nb\n",
+                out.toString());
+    }
+
+    /** Checks literal, glob, anchored, folder-only and negated ignore
+     *  patterns. */
+    @Test
+    public void ignoreTest() {
+        Ignore ignore = new Ignore(Arrays.asList("# comment", "build/",
+                "*.log", "/docs/out", "src/**/gen", "!keep.log"));
+        assertTrue(ignore.ignored("build", true));
+        assertFalse(ignore.ignored("build", false));
+        assertTrue(ignore.ignoredPath("a/build/x.java"));
+        assertTrue(ignore.ignored("a/b/err.log", false));
+        assertFalse(ignore.ignored("keep.log", false));
+        assertTrue(ignore.ignored("docs/out", false));
+        assertFalse(ignore.ignored("x/docs/out", false));
+        assertTrue(ignore.ignored("src/gen", true));
+        assertTrue(ignore.ignored("src/a/b/gen", true));
+        assertFalse(ignore.ignored("src/a/b/gen.c", false));
+    }
+
+    @Test
+    public void bitmapTest() {
+        final int n = 10000;
+        Bitmap evens = new Bitmap();
+        for (int i = 0; i < n; i += 2) {
+            evens.add(i);
+        }
+        evens.add(1 << 20);
+        assertEquals(n / 2 + 1, evens.cardinality());
+        assertTrue(evens.contains(n - 2));
+        assertFalse(evens.contains(n - 1));
+        Bitmap threes = new Bitmap();
+        for (int i = 0; i < n; i += 3) {
+            threes.add(i);
+        }
+        Bitmap left = evens.andNot(threes);
+        assertTrue(left.contains(4));
+        assertFalse(left.contains(6));
+        assertTrue(left.contains(1 << 20));
+        threes.or(evens);
+        assertTrue(threes.contains(3) && threes.contains(4));
+        assertFalse(threes.contains(5));
+        Bitmap copy = Bitmap.read(ByteBuffer.wrap(threes.toBytes()));
+        assertEquals(threes.cardinality(), copy.cardinality());
+        int[] sum = {0, 0};
+        threes.forEach(i -> sum[0] += i);
+        copy.forEach(i -> sum[1] += i);
+        assertEquals(sum[0], sum[1]);
+    }
+
+    @Test
+    public void pathFiltersTest() {
+        HashMap<String, String> parent = new HashMap<String, String>();
+        parent.put("a.txt", "1");
+        parent.put("src/b.txt", "2");
+        HashMap<String, String> tree = new HashMap<String, String>(parent);
+        tree.put("src/lib/c.txt", "3");
+        tree.remove("a.txt");
+        Set<String> changed = PathFilters.changed(tree, parent);
+        assertEquals(new HashSet<String>(Arrays.asList("a.txt", "src",
+                "src/lib", "src/lib/c.txt")), changed);
+    }
+
+    @Test
+    public void objectIdTest() {
+        String a = Utils.sha1("a"), b = Utils.sha1("b");
+        ObjectId idA = ObjectId.fromHex(a);
+        assertEquals(a, idA.toHex());
+        assertEquals(idA, ObjectId.fromBytes(idA.toBytes(), 0));
+        assertEquals(idA.hashCode(), ObjectId.fromHex(a).hashCode());
+        assertEquals(Integer.signum(a.compareTo(b)),
+                Integer.signum(idA.compareTo(ObjectId.fromHex(b))));
+        assertEquals("00ff7f", ObjectId.toHex(ObjectId.hexBytes("00ff7f")));
+        assertEquals("86f7e437faa5a7fce15d1ddcb9eaeaea377667b8", a);
+    }
+
+    /** Checks that a criss-cross merge has two best common ancestors
+     *  and that a plain fork has one. */
+    @Test
+    public void mergeBaseTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-index").toFile();
+        CommitIndex index = CommitIndex.open(dir);
+        Commit root = new Commit();
+        Commit a1 = child(root, "a1"), b1 = child(root, "b1");
+        Commit a2 = child(a1, "a2"), b2 = child(b1, "b2");
+        a2.addCoParent(b1.getHash());
+        b2.addCoParent(a1.getHash());
+        for (Commit c : List.of(root, a1, b1, a2, b2)) {
+            index.add(c);
+        }
+        MergeBase bases = new MergeBase(index, new HashSet<String>());
+        assertEquals(List.of(root.getHash()),
+                bases.bases(a1.getHash(), List.of(b1.getHash())));
+        assertEquals(new HashSet<String>(List.of(a1.getHash(),
+                b1.getHash())), new HashSet<String>(
+                        bases.bases(a2.getHash(), List.of(b2.getHash()))));
+        assertTrue(bases.isAncestor(b1.getHash(), a2.getHash()));
+        assertFalse(bases.isAncestor(a2.getHash(), b2.getHash()));
+    }
+
+    /** Checks the merge base of a long history and a short branch off
+     *  its middle, where most of the walk is over commits already known
+     *  to be common. */
+    @Test
+    public void longMergeBaseTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-index").toFile();
+        CommitIndex index = CommitIndex.open(dir);
+        Commit c = new Commit(), fork = null;
+        index.add(c);
+        for (int i = 0; i < LONG_HISTORY; i += 1) {
+            c = child(c, "m" + i);
+            index.add(c);
+            if (i == LONG_HISTORY / 2) {
+                fork = c;
+            }
+        }
+        Commit side = child(fork, "side");
+        index.add(side);
+        MergeBase bases = new MergeBase(index, new HashSet<String>());
+        assertEquals(List.of(fork.getHash()),
+                bases.bases(c.getHash(), List.of(side.getHash())));
+        assertTrue(bases.isAncestor(fork.getHash(), c.getHash()));
+    }
+
+    /** Checks that a torn record at the end of the commit index is
+     *  ignored, and cut off only under the exclusive lock. */
+    @Test
+    public void tornIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-index").toFile();
+        Commit root = new Commit();
+        CommitIndex.open(dir).add(root);
+        File file = new File(dir, CommitIndex.INDEX_NAME);
+        long whole = file.length();
+        Files.write(file.toPath(), new byte[] {1, 2, 3},
+                StandardOpenOption.APPEND);
+        assertTrue(CommitIndex.open(dir).contains(root.getHash()));
+        assertEquals(whole + 3, file.length());
+        RepoLock lock = RepoLock.acquire(dir, false);
+        try {
+            assertTrue(CommitIndex.open(dir).contains(root.getHash()));
+            assertEquals(whole, file.length());
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Checks that divergence from several upstreams is counted in one
+     *  walk. */
+    @Test
+    public void aheadBehindTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-index").toFile();
+        CommitIndex index = CommitIndex.open(dir);
+        Commit root = new Commit();
+        Commit a1 = child(root, "a1"), a2 = child(a1, "a2");
+        Commit b1 = child(root, "b1");
+        for (Commit c : List.of(root, a1, a2, b1)) {
+            index.add(c);
+        }
+        List<int[]> counts = new AheadBehind(index, new HashSet<String>())
+            .count(List.of(new String[] {a2.getHash(), b1.getHash()},
+                    new String[] {a1.getHash(), a2.getHash()},
+                    new String[] {root.getHash(), root.getHash()}));
+        assertArrayEquals(new int[] {2, 1}, counts.get(0));
+        assertArrayEquals(new int[] {0, 1}, counts.get(1));
+        assertArrayEquals(new int[] {0, 0}, counts.get(2));
+    }
+
+    /** Checks which files and folders a sparse cone keeps. */
+    @Test
+    public void sparseTest() {
+        Sparse cone = new Sparse(List.of("src/main", "docs"));
+        assertTrue(cone.includes("README"));
+        assertTrue(cone.includes("docs/a/b.txt"));
+        assertTrue(cone.includes("src/main/Main.java"));
+        assertFalse(cone.includes("src/test/T.java"));
+        assertFalse(cone.includes("src/build.xml"));
+        assertTrue(cone.enters("src"));
+        assertTrue(cone.enters("src/main/gitlet"));
+        assertFalse(cone.enters("src/test"));
+        assertFalse(cone.enters("doc"));
+        Ignore rules = new Ignore(List.of("*.log")).within(cone);
+        assertTrue(rules.ignored("docs/x.log", false));
+        assertTrue(rules.ignored("lib", true));
+        assertFalse(rules.ignored("docs/x.txt", false));
+    }
+
+    /** Checks that command durations land in cumulative buckets and
+     *  that the counters form a valid MXBean. */
+    @Test
+    public void metricsTest() {
+        Metrics.command("metrics-test", 30_000_000L);
+        String text = Metrics.prometheus();
+        assertTrue(text.contains("gitlet_command_duration_seconds_bucket"
+                + "{command=\"metrics-test\",le=\"0.025\"} 0\n"));
+        assertTrue(text.contains("gitlet_command_duration_seconds_bucket"
+                + "{command=\"metrics-test\",le=\"0.05\"} 1\n"));
+        assertTrue(JMX.isMXBeanInterface(MetricsMXBean.class));
+    }
+
+    /** Checks that saving adds this process's counts to those already
+     *  in the metrics file. */
+    @Test
+    public void metricsFileTest() throws IOException {
+        File file = File.createTempFile("gitlet-", ".prom");
+        String count = "gitlet_command_duration_seconds_count"
+            + "{command=\"save-test\"}";
+        Utils.writeContents(file, count + " 4\n");
+        System.setProperty("gitlet.metricsFile", file.getPath());
+        try {
+            Metrics.command("save-test", 1);
+            Metrics.save();
+            Metrics.save();
+        } finally {
+            System.clearProperty("gitlet.metricsFile");
+        }
+        String text = Utils.readContentsAsString(file);
+        assertTrue(text.contains("\n" + count + " 5\n"));
+        assertTrue(text.contains("# TYPE gitlet_objects_read_total counter"));
+    }
+
+    /** Checks that the repository state written before commits were
+     *  indexed still reads, with its commit list upgraded. */
+    @Test
+    public void oldRepoTest() {
+        Repo repo = Utils.readObject(new File(".gitlet", "GITLET"),
+                Repo.class);
+        assertEquals("4bda93a7dcf810f6afcebe48c7dbec8367e225d9",
+                repo.convertID("4bda93a7"));
+    }
+
+    /** Checks that the tree of a commit, which the commit cache shares
+     *  among callers, cannot be changed through it. */
+    @Test
+    public void sharedTreeTest() {
+        try {
+            new Commit().getTree().put("f.txt", Utils.sha1("f"));
+            fail("The tree of a commit was changed.");
+        } catch (UnsupportedOperationException excp) {
+            assertTrue(new Commit().getTree().isEmpty());
+        }
+    }
+
+    /** Checks that a commit written before merges could have more than
+     *  two parents still reads, and that its children gain parents. */
+    @Test
+    public void oldCommitTest() {
+        String hash = "4bda93a7dcf810f6afcebe48c7dbec8367e225d9";
+        Commit old = Utils.readObject(new File(".gitlet", hash),
+                Commit.class);
+        assertEquals(hash, old.getHash());
+        assertEquals(0, old.getParents().length);
+        Commit merge = child(old, "merge");
+        merge.addCoParent(Utils.sha1("a"));
+        assertArrayEquals(new String[] {hash, Utils.sha1("a")},
+                merge.getParents());
+        merge.addCoParent(Utils.sha1("b"));
+        assertEquals(3, merge.getParents().length);
+    }
+
+    /** Checks that a watch reports the files changed, and asks for a
+     *  full scan when it has just started and after events are lost. */
+    @Test
+    public void dirtySetTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-work").toFile();
+        Utils.writeContents(new File(dir, "a"), "a");
+        DirtySet watch = DirtySet.watch(dir, new Ignore(List.of()));
+        try {
+            assertNull(watch.drain());
+            Utils.writeContents(new File(dir, "b"), "b");
+            assertEquals(Set.of("b"), watch.drain());
+            assertEquals(Set.of(), watch.drain());
+            watch.lost();
+            assertNull(watch.drain());
+            new File(dir, "a").delete();
+            assertEquals(Set.of("a"), watch.drain());
+        } finally {
+            watch.close();
+        }
+    }
+
+    /** Checks that fetching at a smaller depth after deepening leaves
+     *  the history already held whole, even for gc. */
+    @Test
+    public void fetchDepthTest() throws Exception {
+        File remote = Files.createTempDirectory("gitlet-remote").toFile();
+        File local = Files.createTempDirectory("gitlet-local").toFile();
+        gitlet(remote, "init");
+        for (int i = 1; i <= 3; i += 1) {
+            Utils.writeContents(new File(remote, "f.txt"), "v" + i);
+            gitlet(remote, "add", "f.txt");
+            gitlet(remote, "commit", "c" + i);
+        }
+        gitlet(remote, "branch", "other");
+        gitlet(remote, "checkout", "other");
+        Utils.writeContents(new File(remote, "g.txt"), "g");
+        gitlet(remote, "add", "g.txt");
+        gitlet(remote, "commit", "c4");
+        String url = new File(remote, ".gitlet").getPath();
+        gitlet(local, "init");
+        gitlet(local, "add-remote", "origin", url);
+        gitlet(local, "fetch", "--depth", "1", "origin", "master");
+        gitlet(local, "fetch", "--depth", "10", "origin", "master");
+        gitlet(local, "fetch", "--depth", "1", "origin", "other");
+        gitlet(local, "fetch", "--depth", "1", "origin", "master");
+        gitlet(local, "gc", "--prune=now");
+        gitlet(local, "checkout", "origin/master");
+        String log = gitlet(local, "log", "--oneline");
+        assertTrue(log.contains(" c1\n"));
+        assertTrue(log.contains(" initial commit\n"));
+    }
+
+    /** Checks that blame saves new attributions once, and that a torn
+     *  record at the end of the cache is cut off by the next save. */
+    @Test
+    public void blameCacheTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet-blame").toFile();
+        gitlet(dir, "init");
+        for (int i = 1; i <= 2; i += 1) {
+            Utils.writeContents(new File(dir, "f.txt"), "a\nb" + i + "\n");
+            gitlet(dir, "add", "f.txt");
+            gitlet(dir, "commit", "c" + i);
+        }
+        File cache = new File(new File(dir, ".gitlet"), BlameCache.NAME);
+        String first = gitlet(dir, "blame", "f.txt");
+        long saved = cache.length();
+        assertTrue(saved > 0);
+        assertEquals(first, gitlet(dir, "blame", "f.txt"));
+        assertEquals(saved, cache.length());
+        Files.write(cache.toPath(), new byte[] {1, 2, 3},
+                StandardOpenOption.APPEND);
+        assertEquals(first, gitlet(dir, "blame", "f.txt"));
+        assertEquals(saved + 3, cache.length());
+        gitlet(dir, "rm", "f.txt");
+        Utils.writeContents(new File(dir, "g.txt"), "a\n");
+        gitlet(dir, "add", "g.txt");
+        gitlet(dir, "commit", "c3");
+        gitlet(dir, "blame", "g.txt");
+        long grown = cache.length();
+        assertTrue(grown > saved + 3);
+        assertEquals(first, gitlet(dir, "blame",
+                gitlet(dir, "log", "--oneline").split("\n")[1]
+                .substring(0, 7), "f.txt"));
+        assertEquals(grown, cache.length());
+    }
+
+    /** Checks that a file at the chunking threshold is stored as a
+     *  manifest of chunks that reads back whole, and that one just under
+     *  it is stored as a single object. */
+    @Test
+    public void chunkedBlobTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-objects").toFile();
+        byte[] data = randomBytes(CHUNK_THRESHOLD);
+        File big = new File(dir, "big"), small = new File(dir, "small");
+        Files.write(big.toPath(), data);
+        Files.write(small.toPath(), Arrays.copyOf(data, data.length - 1));
+        String bigHash = Blobs.store(dir, big);
+        String smallHash = Blobs.store(dir, small);
+        ObjectWriter.drain();
+        assertEquals(Utils.sha1(data), bigHash);
+        assertTrue(Blobs.chunks(dir, bigHash).size() > 1);
+        assertArrayEquals(data, Utils.readContents(Blobs.file(dir, bigHash)));
+        assertTrue(Blobs.chunks(dir, smallHash).isEmpty());
+        assertArrayEquals(Utils.readContents(small),
+                Utils.readContents(Blobs.file(dir, smallHash)));
+    }
+
+    /** Checks that inserting bytes in the middle of a stream changes
+     *  only the chunks around the edit. */
+    @Test
+    public void chunkBoundaryTest() throws IOException {
+        byte[] data = randomBytes(CHUNK_THRESHOLD);
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(data, 0, data.length / 2);
+        edited.write("an edit".getBytes(StandardCharsets.UTF_8));
+        edited.write(data, data.length / 2, data.length - data.length / 2);
+        List<String> before = chunkHashes(data);
+        List<String> after = chunkHashes(edited.toByteArray());
+        HashSet<String> kept = new HashSet<String>(before);
+        kept.retainAll(after);
+        assertTrue(before.size() > 2);
+        assertTrue(kept.size() >= before.size() - 2);
+    }
+
+    /** Checks that gc removes only unreachable objects and temporary
+     *  files older than the grace period. */
+    @Test
+    public void gcGraceTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-objects").toFile();
+        String live = Utils.sha1("live"), old = Utils.sha1("old");
+        String recent = Utils.sha1("recent");
+        long now = System.currentTimeMillis();
+        long cutoff = now - GRACE;
+        for (String name : List.of(live, old, recent, "x.tmp")) {
+            File f = new File(dir, name);
+            Utils.writeContents(f, name);
+            f.setLastModified(name.equals(recent) ? now : cutoff - GRACE);
+        }
+        long[] pruned = Repo.prune(dir, Set.of(ObjectId.fromHex(live)),
+                cutoff);
+        assertEquals(2, pruned[0]);
+        assertEquals(old.length() + "x.tmp".length(), pruned[1]);
+        assertTrue(new File(dir, live).exists());
+        assertTrue(new File(dir, recent).exists());
+        assertFalse(new File(dir, old).exists());
+        assertFalse(new File(dir, "x.tmp").exists());
+    }
+
+    /** Checks that fsck reports blobs that are corrupt or missing and
+     *  nothing about sound ones. */
+    @Test
+    public void fsckTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-objects").toFile();
+        Commit root = new Commit();
+        Utils.writeObject(new File(dir, root.getHash()), root);
+        String good = Utils.sha1("good"), bad = Utils.sha1("bad");
+        String missing = Utils.sha1("missing");
+        Utils.writeContents(new File(dir, good), "good");
+        Utils.writeContents(new File(dir, bad), "not bad");
+        List<String> problems = new Fsck(dir, List.of(root.getHash()),
+                List.of(good, bad, missing), List.of(root.getHash()),
+                List.of(), false).run(false);
+        assertEquals(List.of("corrupt blob " + bad, "missing blob "
+                + missing + " (in staging area)"), problems);
+    }
+
+    /** Return a new commit whose parent is PARENT, with message
+     *  MESSAGE. */
+    private static Commit child(Commit parent, String message) {
+        return new Commit(new Staging(parent), message, parent.getHash());
+    }
+
+    /** Run gitlet in folder DIR with arguments ARGS, in a new process,
+     *  and return what it prints. */
+    private static String gitlet(File dir, String... args)
+        throws IOException, InterruptedException {
+        ArrayList<String> command = new ArrayList<String>(List.of(
+                new File(System.getProperty("java.home"), "bin/java")
+                    .getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+        String out = new String(p.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        p.waitFor();
+        return out;
+    }
 
+    /** Return N bytes from a seeded random source. */
+    private static byte[] randomBytes(int n) {
+        byte[] result = new byte[n];
+        new Random(n).nextBytes(result);
+        return result;
+    }
+
+    /** Return the hashes of the chunks DATA is cut into. */
+    private static List<String> chunkHashes(byte[] data) throws IOException {
+        Chunker chunker = new Chunker(new ByteArrayInputStream(data));
+        ArrayList<String> result = new ArrayList<String>();
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            result.add(Utils.sha1(c));
+        }
+        return result;
+    }
+
+    /** Size at which files are chunked by default. */
+    private static final int CHUNK_THRESHOLD = 8 * 1024 * 1024;
+    /** Length of the long history of longMergeBaseTest. */
+    private static final int LONG_HISTORY = 2000;
+    /** A grace period for gc, in milliseconds. */
+    private static final long GRACE = 60_000;
+}
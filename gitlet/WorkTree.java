@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The files of a working folder, named by their paths relative to the
+ * folder with '/' between components. Folders are listed in parallel,
+ * each one as its own fork-join task. The .gitlet folder is never
+ * entered, symbolic links to folders are not followed, and entries that
+ * vanish during the walk are skipped. Ignored files are left out, and
+ * ignored folders are not entered at all.
+ *  @author Tiffany Kim */
+
+class WorkTree {
+
+    /** Return the names of all plain files under folder ROOT that
+     *  IGNORE does not ignore. */
+    static TreeSet<String> files(File root, Ignore ignore) {
+        return files(root, "", ignore);
+    }
+
+    /** Return the names, relative to ROOT, of all plain files under its
+     *  subfolder DIR, or under ROOT itself if DIR is empty, that IGNORE
+     *  does not ignore. */
+    static TreeSet<String> files(File root, String dir, Ignore ignore) {
+        Queue<String> found = new ConcurrentLinkedQueue<String>();
+        Path start = dir.length() == 0
+            ? root.toPath() : root.toPath().resolve(dir);
+        ForkJoinPool.commonPool().invoke(
+            new Walk(start, dir, ignore, found));
+        return new TreeSet<String>(found);
+    }
+
+    /** Return NAME, a path relative to ROOT, in the form used in trees.
+     *  Throws a GitletException if it lies outside ROOT. */
+    static String normalize(String name) {
+        Path path = Paths.get(name).normalize();
+        String result = path.toString().replace(File.separatorChar, '/');
+        if (path.isAbsolute() || result.equals("..")
+                || result.startsWith("../")) {
+            throw new GitletException("File is outside the repository.");
+        }
+        return result;
+    }
+
+    /** Create the folders needed to hold file NAME under ROOT. */
+    static void makeParents(File root, String name) {
+        File parent = new File(root, name).getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IllegalArgumentException(
+                "cannot create folder " + parent);
+        }
+    }
+
+    /** Delete file NAME under ROOT, which must hold a .gitlet folder,
+     *  then any folders left empty by its removal. Return true iff the
+     *  file was deleted. */
+    static boolean delete(File root, String name) {
+        if (!new File(root, ".gitlet").isDirectory()) {
+            throw new IllegalArgumentException(
+                "not .gitlet working directory");
+        }
+        File file = new File(root, name);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        for (int end = name.lastIndexOf('/'); end > 0;
+             end = name.lastIndexOf('/', end - 1)) {
+            if (!new File(root, name.substring(0, end)).delete()) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff folder entry NAME is never part of the working
+     *  tree. */
+    static boolean excluded(String name) {
+        return name.equals(".gitlet") || DirtySet.isCookie(name);
+    }
+
+    /** A task listing one folder and forking a task for each of its
+     *  subfolders. */
+    private static class Walk extends RecursiveAction {
+
+        /** A task adding to FOUND the files in folder DIR, whose name
+         *  relative to the root is PREFIX, that IGNORE does not
+         *  ignore. */
+        Walk(Path dir, String prefix, Ignore ignore, Queue<String> found) {
+            _dir = dir;
+            _prefix = prefix.length() == 0 ? "" : prefix + "/";
+            _ignore = ignore;
+            _found = found;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walk> subtasks = new ArrayList<Walk>();
+            try (DirectoryStream<Path> entries =
+                     Files.newDirectoryStream(_dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (excluded(name)) {
+                        continue;
+                    }
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry,
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException excp) {
+                        continue;
+                    }
+                    String path = _prefix + name;
+                    if (_ignore.ignored(path, attrs.isDirectory())) {
+                        continue;
+                    } else if (attrs.isDirectory()) {
+                        subtasks.add(new Walk(entry, path, _ignore, _found));
+                    } else if (Files.isRegularFile(entry)) {
+                        _found.add(path);
+                    }
+                }
+            } catch (NoSuchFileException excp) {
+                return;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            invokeAll(subtasks);
+        }
+
+        /** Tasks are never serialized; fixed so that the class does not
+         *  depend on a computed value. */
+        private static final long serialVersionUID = 1L;
+
+        /** Folder listed. */
+        private final Path _dir;
+        /** Name of _dir relative to the root, followed by '/', or empty
+         *  for the root. */
+        private final String _prefix;
+        /** Rules of files to leave out. */
+        private final Ignore _ignore;
+        /** Names of the files found. */
+        private final Queue<String> _found;
+    }
+}
@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Crash-safe writes of repository files. Every file is written under a
+ * temporary name and renamed into place only once its contents are on
+ * disk, so a file under its final name is whole even after a crash;
+ * code that skips writing objects that already exist may rely on that.
+ *
+ * Objects, which never change once written, are made durable together:
+ * they stay under their temporary names until flush, which forces them
+ * all, renames them all and then forces each folder written to once,
+ * just before the repository state that refers to them is replaced.
+ * Until then they are found through current and exists. The few other
+ * files that are rewritten, such as the commit index, are replaced at
+ * once, since they may be read or appended to again before the flush.
+ *  @author Tiffany Kim */
+
+class WriteBatch {
+
+    /** Write the concatenation of CONTENTS to the object FILE, as for
+     *  Utils.writeContents, but atomically. FILE appears at the next
+     *  flush; until then, current(FILE) names the contents. */
+    static void write(File file, Object... contents) {
+        Path target = key(file);
+        Path tmp = tempFor(target);
+        Utils.writeContents(tmp.toFile(), contents);
+        defer(target, tmp);
+    }
+
+    /** Copy FROM to the object TO a buffer at a time, atomically. TO
+     *  appears at the next flush; until then, current(TO) names the
+     *  copy. */
+    static void copy(File from, File to) {
+        Path target = key(to);
+        Path tmp = tempFor(target);
+        try {
+            Files.copy(from.toPath(), tmp,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        defer(target, tmp);
+    }
+
+    /** Atomically replace FILE, which is not an object, with the
+     *  concatenation of CONTENTS. The new contents are on disk before
+     *  they replace the old; the rename is made durable by the next
+     *  flush. */
+    static void replace(File file, Object... contents) {
+        Path target = file.toPath();
+        Path tmp = tempFor(target);
+        Utils.writeContents(tmp.toFile(), contents);
+        force(tmp, false);
+        rename(tmp, target);
+        FOLDERS.add(target.toAbsolutePath().getParent());
+    }
+
+    /** Note that FILE was changed in place, or linked into place, and
+     *  must be made durable by the next flush. */
+    static void touched(File file) {
+        TOUCHED.add(file.toPath());
+    }
+
+    /** Return the file now holding the contents of FILE: its temporary
+     *  file if it is an object written since the last flush, and
+     *  otherwise FILE itself. */
+    static File current(File file) {
+        Path tmp = PENDING.get(key(file));
+        return tmp == null ? file : tmp.toFile();
+    }
+
+    /** Return true iff FILE exists or is an object written since the
+     *  last flush. */
+    static boolean exists(File file) {
+        return current(file).exists();
+    }
+
+    /** Make every file written since the last flush durable: objects
+     *  still queued in ObjectWriter are written, written objects and
+     *  files changed in place are forced, the objects are renamed into
+     *  place, and then each folder that gained or changed a file is
+     *  forced once, making the renames durable. */
+    static void flush() {
+        ObjectWriter.drain();
+        List<Map.Entry<Path, Path>> objects =
+            new ArrayList<Map.Entry<Path, Path>>(PENDING.entrySet());
+        List<Path> files = new ArrayList<Path>(TOUCHED);
+        TOUCHED.removeAll(files);
+        objects.parallelStream().forEach(e -> force(e.getValue(), false));
+        files.parallelStream().forEach(f -> force(f, false));
+        for (Map.Entry<Path, Path> e : objects) {
+            rename(e.getValue(), e.getKey());
+            PENDING.remove(e.getKey());
+            FOLDERS.add(e.getKey().toAbsolutePath().getParent());
+        }
+        for (Path f : files) {
+            FOLDERS.add(f.toAbsolutePath().getParent());
+        }
+        List<Path> dirs = new ArrayList<Path>(FOLDERS);
+        FOLDERS.removeAll(dirs);
+        for (Path dir : dirs) {
+            force(dir, true);
+        }
+    }
+
+    /** Durably replace FILE with the serialized form of OBJ, after
+     *  making all files written so far durable. */
+    static void commitState(File file, Serializable obj) {
+        flush();
+        Path target = file.toPath();
+        Path tmp = tempFor(target);
+        Utils.writeContents(tmp.toFile(), Utils.serialize(obj));
+        force(tmp, false);
+        rename(tmp, target);
+        force(target.toAbsolutePath().getParent(), true);
+    }
+
+    /** Keep TMP, holding the new contents of the object TARGET, until
+     *  the next flush. An object already waiting has the same contents,
+     *  so TMP is then dropped. */
+    private static void defer(Path target, Path tmp) {
+        if (PENDING.putIfAbsent(target, tmp) != null) {
+            try {
+                Files.delete(tmp);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Return the name under which the object FILE is kept in
+     *  PENDING. */
+    private static Path key(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /** Return true iff NAME is the name of a temporary file. */
+    static boolean isTemporary(String name) {
+        return name.endsWith(TEMP_SUFFIX);
+    }
+
+    /** Return a new temporary file beside TARGET. */
+    private static Path tempFor(Path target) {
+        try {
+            return Files.createTempFile(target.toAbsolutePath().getParent(),
+                    target.getFileName() + ".", TEMP_SUFFIX);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Atomically rename FROM to TO, replacing TO. */
+    private static void rename(Path from, Path to) {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Force the contents of PATH to disk. DIRECTORY is true if PATH is
+     *  a directory, which some systems cannot force; that is ignored. */
+    private static void force(Path path, boolean directory) {
+        try (FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (!directory) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Suffix of temporary files. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Temporary files of the objects written since the last flush, by
+     *  the objects' names. */
+    private static final Map<Path, Path> PENDING =
+        new ConcurrentHashMap<Path, Path>();
+    /** Files changed in place but not yet made durable. */
+    private static final Set<Path> TOUCHED = ConcurrentHashMap.newKeySet();
+    /** Folders holding renames not yet made durable. */
+    private static final Set<Path> FOLDERS = ConcurrentHashMap.newKeySet();
+}